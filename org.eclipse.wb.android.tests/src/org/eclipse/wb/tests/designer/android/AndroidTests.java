@@ -15,6 +15,8 @@ import junit.framework.TestSuite;
 
 import org.eclipse.wb.tests.designer.android.gef.GefTests;
 import org.eclipse.wb.tests.designer.android.model.ModelTests;
+import org.eclipse.wb.tests.designer.android.parser.ParserTests;
+import org.eclipse.wb.tests.designer.android.support.SupportTests;
 import org.eclipse.wb.tests.designer.core.DesignerSuiteTests;
 
 /**
@@ -28,6 +30,8 @@ public class AndroidTests extends DesignerSuiteTests {
 		//suite.addTest(createSingleSuite(TestProjectTest.class));
 		suite.addTest(ModelTests.suite());
 		suite.addTest(GefTests.suite());
+		suite.addTest(ParserTests.suite());
+		suite.addTest(SupportTests.suite());
 		return suite;
 	}
 }
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Google, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Google, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.tests.designer.android.parser;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.List;
+
+import org.eclipse.wb.android.internal.parser.AndroidNativeParser;
+import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
+import org.eclipse.wb.tests.designer.tests.DesignerTestCase;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link AndroidNativeParser}.
+ *
+ * @author sablin_aa
+ */
+public class AndroidNativeParserTest extends DesignerTestCase {
+	private static final String ANDROID_URI = "http://schemas.android.com/apk/res/android";
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Events
+	//
+	////////////////////////////////////////////////////////////////////////////
+	public void test_events() throws Exception {
+		AndroidNativeParser parser = new AndroidNativeParser(createLayout());
+		assertThat(getEvents(parser)).containsExactly(
+			"START_TAG LinearLayout 1",
+			"START_TAG TextView 2",
+			"END_TAG TextView 2",
+			"START_TAG FrameLayout 2",
+			"START_TAG Button 3",
+			"END_TAG Button 3",
+			"START_TAG include 3",
+			"END_TAG include 3",
+			"END_TAG FrameLayout 2",
+			"START_TAG ImageView 2",
+			"END_TAG ImageView 2",
+			"END_DOCUMENT");
+	}
+
+	/**
+	 * Events are same as produced by previous implementation, which walked {@link DocumentElement}'s
+	 * during parsing.
+	 */
+	public void test_events_sameAsTreeWalk() throws Exception {
+		DocumentElement root = createLayout();
+		// add deeper hierarchy
+		DocumentElement level = root;
+		for (int i = 0; i < 5; i++) {
+			DocumentElement child = new DocumentElement("LinearLayout");
+			level.addChild(child);
+			level.addChild(new DocumentElement("View"));
+			level = child;
+		}
+		level.addChild(new DocumentElement("TextView"));
+		//
+		List<String> expected = Lists.newArrayList();
+		addTreeWalkEvents(expected, root, 1);
+		expected.remove(expected.size() - 1);
+		expected.add("END_DOCUMENT");
+		assertEquals(expected, getEvents(new AndroidNativeParser(root)));
+	}
+
+	public void test_events_parseOnly() throws Exception {
+		DocumentElement root = createLayout();
+		assertEquals(
+			getEvents(new AndroidNativeParser(root)),
+			getEvents(new AndroidNativeParser(root, true)));
+	}
+
+	public void test_viewCookie() throws Exception {
+		DocumentElement root = createLayout();
+		AndroidNativeParser parser = new AndroidNativeParser(root);
+		assertEquals(XmlPullParser.START_TAG, parser.next());
+		assertSame(root, parser.getViewCookie());
+		assertEquals(XmlPullParser.START_TAG, parser.next());
+		assertSame(root.getChildren().get(0), parser.getViewCookie());
+	}
+
+	/**
+	 * Parser uses state of tree at the moment of creation.
+	 */
+	public void test_snapshot() throws Exception {
+		DocumentElement root = createLayout();
+		AndroidNativeParser parser = new AndroidNativeParser(root);
+		List<String> expected = getEvents(new AndroidNativeParser(root));
+		root.addChild(new DocumentElement("Button"));
+		assertEquals(expected, getEvents(parser));
+		// attributes also from snapshot
+		parser = new AndroidNativeParser(root);
+		root.getChildren().get(0).setAttribute("android:text", "Changed");
+		parser.next();
+		parser.next();
+		assertEquals("Hello", parser.getAttributeValue(ANDROID_URI, "text"));
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Depth and empty tags
+	//
+	////////////////////////////////////////////////////////////////////////////
+	public void test_isEmptyElementTag() throws Exception {
+		AndroidNativeParser parser = new AndroidNativeParser(createLayout());
+		// LinearLayout
+		assertEquals(XmlPullParser.START_TAG, parser.next());
+		assertEquals(1, parser.getDepth());
+		assertFalse(parser.isEmptyElementTag());
+		// TextView
+		assertEquals(XmlPullParser.START_TAG, parser.next());
+		assertEquals(2, parser.getDepth());
+		assertTrue(parser.isEmptyElementTag());
+		// /TextView
+		assertEquals(XmlPullParser.END_TAG, parser.next());
+		assertEquals(2, parser.getDepth());
+		try {
+			parser.isEmptyElementTag();
+			fail();
+		} catch (XmlPullParserException e) {
+		}
+		// FrameLayout
+		assertEquals(XmlPullParser.START_TAG, parser.next());
+		assertEquals("FrameLayout", parser.getName());
+		assertFalse(parser.isEmptyElementTag());
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Attributes
+	//
+	////////////////////////////////////////////////////////////////////////////
+	public void test_attributes_indexed() throws Exception {
+		AndroidNativeParser parser = new AndroidNativeParser(createLayout());
+		// LinearLayout, "xmlns" attributes are not reported
+		parser.next();
+		assertEquals(2, parser.getAttributeCount());
+		assertEquals("layout_width", parser.getAttributeName(0));
+		assertEquals(ANDROID_URI, parser.getAttributeNamespace(0));
+		assertEquals("android", parser.getAttributePrefix(0));
+		assertEquals("fill_parent", parser.getAttributeValue(0));
+		// TextView
+		parser.next();
+		assertEquals(3, parser.getAttributeCount());
+		assertEquals("text", parser.getAttributeName(0));
+		assertEquals("Hello", parser.getAttributeValue(0));
+		assertEquals("style", parser.getAttributeName(1));
+		assertEquals("", parser.getAttributeNamespace(1));
+		assertNull(parser.getAttributePrefix(1));
+		assertEquals("@style/Big", parser.getAttributeValue(1));
+		// undeclared prefix
+		assertEquals("foo", parser.getAttributeName(2));
+		assertEquals("app", parser.getAttributeNamespace(2));
+		try {
+			parser.getAttributeName(3);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	public void test_attributes_namespaced() throws Exception {
+		AndroidNativeParser parser = new AndroidNativeParser(createLayout());
+		parser.next();
+		assertEquals("fill_parent", parser.getAttributeValue(ANDROID_URI, "layout_width"));
+		assertNull(parser.getAttributeValue(ANDROID_URI, "text"));
+		// TextView
+		parser.next();
+		assertEquals("Hello", parser.getAttributeValue(ANDROID_URI, "text"));
+		assertNull(parser.getAttributeValue(null, "text"));
+		assertEquals("@style/Big", parser.getAttributeValue(null, "style"));
+		assertEquals("@style/Big", parser.getAttributeValue("", "style"));
+		assertNull(parser.getAttributeValue(ANDROID_URI, "style"));
+		// undeclared prefix does not match namespace
+		assertNull(parser.getAttributeValue(ANDROID_URI, "foo"));
+	}
+
+	/**
+	 * Namespace declared on child element is used only for this element and its children.
+	 */
+	public void test_attributes_nestedNamespace() throws Exception {
+		DocumentElement root = createLayout();
+		DocumentElement frame = root.getChildren().get(1);
+		frame.setAttribute("xmlns:app", "http://schemas.android.com/apk/res/com.example");
+		frame.getChildren().get(0).setAttribute("app:foo", "bar");
+		AndroidNativeParser parser = new AndroidNativeParser(root);
+		parser.next();
+		parser.next();
+		// TextView, not in scope of declaration
+		assertNull(parser.getAttributeValue("http://schemas.android.com/apk/res/com.example", "foo"));
+		parser.next();
+		parser.next();
+		parser.next();
+		// Button
+		assertEquals("Button", parser.getName());
+		assertEquals("bar", parser.getAttributeValue(
+			"http://schemas.android.com/apk/res/com.example",
+			"foo"));
+	}
+
+	/**
+	 * In parse-only mode only "layout" of "include" is reported.
+	 */
+	public void test_attributes_parseOnly() throws Exception {
+		AndroidNativeParser parser = new AndroidNativeParser(createLayout(), true);
+		// LinearLayout
+		parser.next();
+		assertEquals(0, parser.getAttributeCount());
+		assertNull(parser.getAttributeValue(ANDROID_URI, "layout_width"));
+		// TextView
+		parser.next();
+		assertEquals(0, parser.getAttributeCount());
+		assertNull(parser.getAttributeValue(ANDROID_URI, "text"));
+		// include
+		parser.next();
+		parser.next();
+		parser.next();
+		parser.next();
+		parser.next();
+		assertEquals("include", parser.getName());
+		assertEquals(1, parser.getAttributeCount());
+		assertEquals("layout", parser.getAttributeName(0));
+		assertEquals("@layout/other", parser.getAttributeValue(0));
+		assertEquals("@layout/other", parser.getAttributeValue(null, "layout"));
+		assertNull(parser.getAttributeValue(ANDROID_URI, "layout_width"));
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Utils
+	//
+	////////////////////////////////////////////////////////////////////////////
+	/**
+	 * <pre>
+	 * LinearLayout
+	 *   TextView
+	 *   FrameLayout
+	 *     Button
+	 *     include
+	 *   ImageView
+	 * </pre>
+	 */
+	private static DocumentElement createLayout() {
+		DocumentElement root = new DocumentElement("LinearLayout");
+		root.setAttribute("xmlns:android", ANDROID_URI);
+		root.setAttribute("android:layout_width", "fill_parent");
+		root.setAttribute("android:layout_height", "fill_parent");
+		{
+			DocumentElement text = new DocumentElement("TextView");
+			text.setAttribute("android:text", "Hello");
+			text.setAttribute("style", "@style/Big");
+			text.setAttribute("app:foo", "bar");
+			root.addChild(text);
+		}
+		{
+			DocumentElement frame = new DocumentElement("FrameLayout");
+			root.addChild(frame);
+			DocumentElement button = new DocumentElement("Button");
+			button.setAttribute("android:text", "OK");
+			frame.addChild(button);
+			DocumentElement include = new DocumentElement("include");
+			include.setAttribute("layout", "@layout/other");
+			include.setAttribute("android:layout_width", "wrap_content");
+			frame.addChild(include);
+		}
+		root.addChild(new DocumentElement("ImageView"));
+		return root;
+	}
+
+	/**
+	 * @return the events of given parser, as "type name depth".
+	 */
+	private static List<String> getEvents(XmlPullParser parser) throws Exception {
+		List<String> events = Lists.newArrayList();
+		while (true) {
+			int type = parser.next();
+			if (type == XmlPullParser.END_DOCUMENT) {
+				events.add("END_DOCUMENT");
+				return events;
+			}
+			events.add(XmlPullParser.TYPES[type] + " " + parser.getName() + " " + parser.getDepth());
+		}
+	}
+
+	/**
+	 * Adds events for given element as walked by previous implementation.
+	 */
+	private static void addTreeWalkEvents(List<String> events, DocumentElement element, int depth) {
+		events.add("START_TAG " + element.getTagLocal() + " " + depth);
+		for (DocumentElement child : element.getChildren()) {
+			addTreeWalkEvents(events, child, depth + 1);
+		}
+		events.add("END_TAG " + element.getTagLocal() + " " + depth);
+	}
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Google, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Google, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.tests.designer.android.parser;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.wb.tests.designer.core.DesignerSuiteTests;
+
+/**
+ * Android parser tests.
+ * 
+ * @author sablin_aa
+ */
+public class ParserTests extends DesignerSuiteTests {
+	public static Test suite() {
+		TestSuite suite = new TestSuite("org.eclipse.wb.android.parser");
+		suite.addTest(createSingleSuite(AndroidNativeParserTest.class));
+		return suite;
+	}
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Google, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Google, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.tests.designer.android.support;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.wb.android.internal.support.ClassDependencyScanner;
+import org.eclipse.wb.internal.core.utils.IOUtils2;
+import org.eclipse.wb.tests.designer.tests.DesignerTestCase;
+
+/**
+ * Tests for {@link ClassDependencyScanner}.
+ *
+ * @author sablin_aa
+ */
+public class ClassDependencyScannerTest extends DesignerTestCase {
+	private static final String THIS_CLASS = ClassDependencyScannerTest.class.getName();
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Compiled classes
+	//
+	////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Types used only in generic signatures are found.
+	 */
+	public void test_generics() throws Exception {
+		assertThat(getReferencedClasses(GenericsFixture.class)).contains(
+			"java.util.List",
+			"java.util.Map",
+			"java.lang.String",
+			"java.lang.Thread",
+			"java.util.Set",
+			"java.lang.Runnable",
+			"java.lang.Iterable",
+			"java.lang.Throwable");
+	}
+
+	/**
+	 * Element types of arrays are found, names of arrays are not reported.
+	 */
+	public void test_arrays() throws Exception {
+		Set<String> classes = getReferencedClasses(ArraysFixture.class);
+		assertThat(classes).contains("java.util.Date", "java.util.BitSet");
+		for (String name : classes) {
+			assertFalse(name, name.startsWith("["));
+			assertFalse(name, name.endsWith(";"));
+		}
+	}
+
+	/**
+	 * Nested classes are reported as their top level classes.
+	 */
+	public void test_innerClasses() throws Exception {
+		Set<String> classes = getReferencedClasses(InnerFixture.class);
+		assertThat(classes).contains("java.util.Map", "java.lang.Thread", THIS_CLASS);
+		for (String name : classes) {
+			assertFalse(name, name.contains("$"));
+		}
+	}
+
+	/**
+	 * Long and double constants take two pool entries, classes after them are still found.
+	 */
+	public void test_longDouble() throws Exception {
+		assertThat(getReferencedClasses(LongDoubleFixture.class)).contains(
+			"java.util.Vector",
+			"java.util.Arrays",
+			"java.lang.Long",
+			"java.lang.Double");
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Constant pool entries
+	//
+	////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Entries of newer class files (Dynamic, Module, Package) are skipped, class names declared
+	 * after class entries are resolved.
+	 */
+	public void test_newerEntries() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = createClass(bytes, 13);
+		// #1, #2
+		out.writeByte(1);
+		out.writeUTF("com/example/Foo");
+		out.writeByte(7);
+		out.writeShort(1);
+		// #3 Dynamic
+		out.writeByte(17);
+		out.writeShort(0);
+		out.writeShort(0);
+		// #4, #5
+		out.writeByte(1);
+		out.writeUTF("com/example/Bar$Inner");
+		out.writeByte(7);
+		out.writeShort(4);
+		// #6, #7 Long
+		out.writeByte(5);
+		out.writeLong(Long.MAX_VALUE);
+		// #8 Module, #9 Package
+		out.writeByte(19);
+		out.writeShort(1);
+		out.writeByte(20);
+		out.writeShort(1);
+		// #10 refers to #11
+		out.writeByte(7);
+		out.writeShort(11);
+		out.writeByte(1);
+		out.writeUTF("com/example/Baz");
+		// #12 Double
+		out.writeByte(6);
+		out.writeDouble(1.5);
+		//
+		assertThat(ClassDependencyScanner.getReferencedClasses(bytes.toByteArray())).containsOnly(
+			"com.example.Foo",
+			"com.example.Bar",
+			"com.example.Baz");
+	}
+
+	public void test_unknownEntry() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = createClass(bytes, 2);
+		out.writeByte(99);
+		out.writeShort(0);
+		try {
+			ClassDependencyScanner.getReferencedClasses(bytes.toByteArray());
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void test_truncated() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = createClass(bytes, 3);
+		out.writeByte(1);
+		out.writeUTF("com/example/Foo");
+		try {
+			ClassDependencyScanner.getReferencedClasses(bytes.toByteArray());
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Descriptor entry is cut in the middle, its declared length is beyond end of bytes.
+	 */
+	public void test_truncatedDescriptor() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = createClass(bytes, 2);
+		out.writeByte(1);
+		out.writeShort(10);
+		out.writeBytes("(Lcom");
+		try {
+			ClassDependencyScanner.getReferencedClasses(bytes.toByteArray());
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void test_notClass() throws Exception {
+		try {
+			ClassDependencyScanner.getReferencedClasses(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Fixtures
+	//
+	////////////////////////////////////////////////////////////////////////////
+	static class GenericsFixture {
+		List<Map<String, Thread>> m_field;
+
+		<T extends Runnable> Set<T> foo(Iterable<? super Throwable> iterable) {
+			return null;
+		}
+	}
+	static class ArraysFixture {
+		java.util.Date[][] m_dates;
+
+		Object foo() {
+			return new java.util.BitSet[3];
+		}
+	}
+	static class InnerFixture {
+		Map.Entry<String, String> m_entry;
+
+		Object foo() {
+			return new Thread.State[0];
+		}
+	}
+	static class LongDoubleFixture {
+		static final long LONG = 1234567890123L;
+
+		Object foo() {
+			long longValue = 9876543210L;
+			double doubleValue = 1.25e10;
+			return new java.util.Vector<Object>(Arrays.asList(longValue, doubleValue));
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Utils
+	//
+	////////////////////////////////////////////////////////////////////////////
+	private static Set<String> getReferencedClasses(Class<?> clazz) throws Exception {
+		String name = clazz.getName();
+		name = name.substring(name.lastIndexOf('.') + 1);
+		InputStream stream = clazz.getResourceAsStream(name + ".class");
+		return ClassDependencyScanner.getReferencedClasses(IOUtils2.readBytes(stream));
+	}
+
+	/**
+	 * Writes header of class file with given number of constant pool entries.
+	 */
+	private static DataOutputStream createClass(ByteArrayOutputStream bytes, int count)
+			throws Exception {
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(55);
+		out.writeShort(count);
+		return out;
+	}
+}
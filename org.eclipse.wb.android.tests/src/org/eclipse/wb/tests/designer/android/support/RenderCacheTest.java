@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Google, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Google, Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.tests.designer.android.support;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.wb.android.internal.support.render.LayoutSnapshot;
+import org.eclipse.wb.android.internal.support.render.RenderCache;
+import org.eclipse.wb.android.internal.support.render.RenderResult;
+import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
+import org.eclipse.wb.tests.designer.tests.DesignerTestCase;
+
+import com.android.ide.common.rendering.api.ViewInfo;
+
+/**
+ * Tests for {@link RenderCache}.
+ *
+ * @author sablin_aa
+ */
+public class RenderCacheTest extends DesignerTestCase {
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Life cycle
+	//
+	////////////////////////////////////////////////////////////////////////////
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		RenderCache.INSTANCE.clear();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		RenderCache.INSTANCE.clear();
+		super.tearDown();
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Key
+	//
+	////////////////////////////////////////////////////////////////////////////
+	public void test_key_sameContent() throws Exception {
+		String key = RenderCache.createKey(createLayout("Hello"), "config");
+		assertEquals(key, RenderCache.createKey(createLayout("Hello"), "config"));
+	}
+
+	public void test_key_attributeChanged() throws Exception {
+		String key = RenderCache.createKey(createLayout("Hello"), "config");
+		assertFalse(key.equals(RenderCache.createKey(createLayout("World"), "config")));
+	}
+
+	public void test_key_tagChanged() throws Exception {
+		String key = RenderCache.createKey(createLayout("Hello"), "config");
+		DocumentElement root = new DocumentElement("LinearLayout");
+		root.setAttribute("android:layout_width", "fill_parent");
+		root.setAttribute("android:layout_height", "fill_parent");
+		DocumentElement child = new DocumentElement("Button");
+		child.setAttribute("android:text", "Hello");
+		root.addChild(child);
+		assertFalse(key.equals(RenderCache.createKey(root, "config")));
+	}
+
+	public void test_key_childAdded() throws Exception {
+		DocumentElement root = createLayout("Hello");
+		String key = RenderCache.createKey(root, "config");
+		root.addChild(new DocumentElement("Button"));
+		assertFalse(key.equals(RenderCache.createKey(root, "config")));
+	}
+
+	public void test_key_configurationChanged() throws Exception {
+		DocumentElement root = createLayout("Hello");
+		String key = RenderCache.createKey(root, "config");
+		assertFalse(key.equals(RenderCache.createKey(root, "config2")));
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Access
+	//
+	////////////////////////////////////////////////////////////////////////////
+	public void test_get_noEntry() throws Exception {
+		List<DocumentElement> elements = getElements(createLayout("Hello"));
+		assertNull(RenderCache.INSTANCE.get("key", elements));
+	}
+
+	/**
+	 * Cached views are bound to elements of requesting tree and have no View objects.
+	 */
+	public void test_get_mapsCookies() throws Exception {
+		List<DocumentElement> elements = getElements(createLayout("Hello"));
+		ViewInfo child =
+				new ViewInfo("TextView", elements.get(1), 0, 0, 10, 5, new Object(), new Object());
+		ViewInfo root = new ViewInfo("LinearLayout", elements.get(0), 0, 0, 10, 20, new Object(), null);
+		root.setChildren(Collections.singletonList(child));
+		RenderCache.INSTANCE.put("key", elements, createResult(10, 20, root));
+		// request using other tree
+		List<DocumentElement> otherElements = getElements(createLayout("Hello"));
+		RenderResult result = RenderCache.INSTANCE.get("key", otherElements);
+		assertNotNull(result);
+		assertTrue(result.isCached());
+		assertThat(result.getImage().getWidth()).isEqualTo(10);
+		assertThat(result.getRootViews()).hasSize(1);
+		ViewInfo cachedRoot = result.getRootViews().get(0);
+		assertSame(otherElements.get(0), cachedRoot.getCookie());
+		assertEquals("LinearLayout", cachedRoot.getClassName());
+		assertNull(cachedRoot.getViewObject());
+		ViewInfo cachedChild = cachedRoot.getChildren().get(0);
+		assertSame(otherElements.get(1), cachedChild.getCookie());
+		assertEquals(10, cachedChild.getRight());
+		assertEquals(5, cachedChild.getBottom());
+		assertNull(cachedChild.getViewObject());
+		assertNull(cachedChild.getLayoutParamsObject());
+	}
+
+	public void test_eviction_leastRecentlyUsed() throws Exception {
+		List<DocumentElement> elements = getElements(createLayout("Hello"));
+		for (int i = 0; i < 16; i++) {
+			RenderCache.INSTANCE.put("key" + i, elements, createResult(1, 1));
+		}
+		// access first entry, so second one becomes least recently used
+		assertNotNull(RenderCache.INSTANCE.get("key0", elements));
+		RenderCache.INSTANCE.put("key16", elements, createResult(1, 1));
+		assertNotNull(RenderCache.INSTANCE.get("key0", elements));
+		assertNull(RenderCache.INSTANCE.get("key1", elements));
+		assertNotNull(RenderCache.INSTANCE.get("key2", elements));
+		assertNotNull(RenderCache.INSTANCE.get("key16", elements));
+	}
+
+	public void test_eviction_pixels() throws Exception {
+		List<DocumentElement> elements = getElements(createLayout("Hello"));
+		RenderCache.INSTANCE.put("key0", elements, createResult(2048, 2048));
+		RenderCache.INSTANCE.put("key1", elements, createResult(2048, 2048));
+		RenderCache.INSTANCE.put("key2", elements, createResult(2048, 2048));
+		assertNull(RenderCache.INSTANCE.get("key0", elements));
+		assertNotNull(RenderCache.INSTANCE.get("key1", elements));
+		assertNotNull(RenderCache.INSTANCE.get("key2", elements));
+	}
+
+	public void test_put_replacesEntry() throws Exception {
+		List<DocumentElement> elements = getElements(createLayout("Hello"));
+		RenderCache.INSTANCE.put("key", elements, createResult(1, 1));
+		RenderCache.INSTANCE.put("key", elements, createResult(3, 3));
+		assertThat(RenderCache.INSTANCE.get("key", elements).getImage().getWidth()).isEqualTo(3);
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Utils
+	//
+	////////////////////////////////////////////////////////////////////////////
+	private static DocumentElement createLayout(String text) {
+		DocumentElement root = new DocumentElement("LinearLayout");
+		root.setAttribute("android:layout_width", "fill_parent");
+		root.setAttribute("android:layout_height", "fill_parent");
+		DocumentElement child = new DocumentElement("TextView");
+		child.setAttribute("android:text", text);
+		root.addChild(child);
+		return root;
+	}
+
+	private static List<DocumentElement> getElements(DocumentElement root) {
+		return new LayoutSnapshot(root, true).getElements();
+	}
+
+	private static RenderResult createResult(int width, int height, ViewInfo... rootViews) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		return RenderResult.create(image, Arrays.asList(rootViews));
+	}
+}
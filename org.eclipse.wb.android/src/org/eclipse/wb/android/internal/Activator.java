@@ -11,6 +11,17 @@
 package org.eclipse.wb.android.internal;
 
 import org.eclipse.wb.android.internal.preferences.IPreferenceConstants;
+import org.eclipse.wb.android.internal.support.DependencyGraph;
+import org.eclipse.wb.android.internal.support.LegacyBridgeSupport;
+import org.eclipse.wb.android.internal.support.ProjectCallbackCache;
+import org.eclipse.wb.android.internal.support.WarmUpJob;
+import org.eclipse.wb.android.internal.support.render.RenderCache;
+import org.eclipse.wb.android.internal.support.resources.AttrsParserCache;
+import org.eclipse.wb.android.internal.support.resources.FrameworkResourcesCache;
+import org.eclipse.wb.android.internal.support.resources.ProjectAttributesIndex;
+import org.eclipse.wb.android.internal.support.resources.ProjectChangesTracker;
+import org.eclipse.wb.android.internal.support.resources.ResourceResolverCache;
+import org.eclipse.wb.android.internal.support.resources.ThemeIndex;
 import org.eclipse.wb.internal.core.BundleResourceProvider;
 import org.eclipse.wb.internal.core.model.description.ToolkitDescription;
 
@@ -32,6 +43,7 @@ import java.io.InputStream;
 public class Activator extends AbstractUIPlugin {
   public static final String PLUGIN_ID = "org.eclipse.wb.android";
   private static Activator m_plugin;
+  private WarmUpJob m_warmUpJob;
 
   ////////////////////////////////////////////////////////////////////////////
   //
@@ -40,6 +52,23 @@ public class Activator extends AbstractUIPlugin {
   ////////////////////////////////////////////////////////////////////////////
   @Override
   public void stop(BundleContext context) throws Exception {
+    if (m_warmUpJob != null) {
+      m_warmUpJob.cancel();
+      m_warmUpJob = null;
+    }
+    WarmUpJob.disposeStandby();
+    ProjectChangesTracker.INSTANCE.uninstall();
+    DependencyGraph.INSTANCE.uninstall();
+    AttrsParserCache.INSTANCE.uninstall();
+    AndroidMetrics.INSTANCE.unregister();
+    RenderCache.INSTANCE.clear();
+    ResourceResolverCache.INSTANCE.clear();
+    FrameworkResourcesCache.INSTANCE.clear();
+    ThemeIndex.INSTANCE.clear();
+    AttrsParserCache.INSTANCE.clear();
+    ProjectAttributesIndex.INSTANCE.clear();
+    LegacyBridgeSupport.clear();
+    ProjectCallbackCache.INSTANCE.clear();
     m_plugin = null;
     super.stop(context);
   }
@@ -48,6 +77,15 @@ public class Activator extends AbstractUIPlugin {
   public void start(BundleContext context) throws Exception {
     super.start(context);
     m_plugin = this;
+    ProjectChangesTracker.INSTANCE.install();
+    DependencyGraph.INSTANCE.install();
+    AndroidMetrics.INSTANCE.register();
+    // preloading and warm up access ADT, so do them only if enabled
+    if (getPreferenceStore().getBoolean(IPreferenceConstants.P_WARM_UP_ON_STARTUP)) {
+      AttrsParserCache.INSTANCE.preload();
+      m_warmUpJob = new WarmUpJob();
+      m_warmUpJob.schedule();
+    }
   }
 
   /**
@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.android.internal.support.render.RenderCache;
+import org.eclipse.wb.internal.core.utils.execution.ExecutionUtils;
+import org.eclipse.wb.internal.core.utils.execution.RunnableEx;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide metrics of Android designer: latency of rendering, parsing and fetching, cache
+ * effectiveness and number of live layoutlib sessions.
+ * <p>
+ * Recording is cheap (atomic counters and fixed buckets), so it is always enabled. Metrics are
+ * published as JMX MBean {@link #OBJECT_NAME}, for example to see them in JConsole.
+ *
+ * @author mitin_aa
+ * @coverage android
+ */
+public final class AndroidMetrics implements AndroidMetricsMBean {
+  public static final String OBJECT_NAME = "org.eclipse.wb.android:type=Metrics";
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final AndroidMetrics INSTANCE = new AndroidMetrics();
+  private final Histogram m_render = new Histogram();
+  private final Histogram m_parse = new Histogram();
+  private final Histogram m_fetch = new Histogram();
+  private final Map<String, Histogram> m_renderPhases = Maps.newLinkedHashMap();
+  private final AtomicInteger m_liveSessions = new AtomicInteger();
+  private final AtomicLong m_resolverBuilds = new AtomicLong();
+  private final AtomicLong m_imageBytes = new AtomicLong();
+
+  private AndroidMetrics() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Recording
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Records rendering which started at given {@link System#nanoTime()}. Only real work of layoutlib
+   * session should be recorded, hits of {@link RenderCache} are counted by cache itself.
+   */
+  public void renderFinished(long start) {
+    m_render.record(System.nanoTime() - start);
+  }
+
+  /**
+   * Records parsing which started at given {@link System#nanoTime()}.
+   */
+  public void parseFinished(long start) {
+    m_parse.record(System.nanoTime() - start);
+  }
+
+  /**
+   * Records fetching of model from rendered result which started at given
+   * {@link System#nanoTime()}.
+   */
+  public void fetchFinished(long start) {
+    m_fetch.record(System.nanoTime() - start);
+  }
+
+  /**
+   * Records times in nanoseconds spent in phases of rendering.
+   */
+  public void renderPhasesFinished(Map<String, Long> timings) {
+    for (Map.Entry<String, Long> entry : timings.entrySet()) {
+      Histogram histogram;
+      synchronized (m_renderPhases) {
+        histogram = m_renderPhases.get(entry.getKey());
+        if (histogram == null) {
+          histogram = new Histogram();
+          m_renderPhases.put(entry.getKey(), histogram);
+        }
+      }
+      histogram.record(entry.getValue());
+    }
+  }
+
+  public void sessionCreated() {
+    m_liveSessions.incrementAndGet();
+  }
+
+  public void sessionDisposed() {
+    m_liveSessions.decrementAndGet();
+  }
+
+  public void resolverBuilt() {
+    m_resolverBuilds.incrementAndGet();
+  }
+
+  /**
+   * Records number of bytes converted from AWT image into SWT image.
+   */
+  public void imageConverted(long bytes) {
+    m_imageBytes.addAndGet(bytes);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // JMX
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Registers this instance in platform {@link MBeanServer}.
+   */
+  public void register() {
+    ExecutionUtils.runLog(new RunnableEx() {
+      public void run() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+          server.registerMBean(AndroidMetrics.this, name);
+        }
+      }
+    });
+  }
+
+  /**
+   * Removes this instance from platform {@link MBeanServer}.
+   */
+  public void unregister() {
+    ExecutionUtils.runLog(new RunnableEx() {
+      public void run() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+          server.unregisterMBean(name);
+        }
+      }
+    });
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // AndroidMetricsMBean
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public long getRenderCount() {
+    return m_render.getCount();
+  }
+
+  public double getRenderMeanMillis() {
+    return m_render.getMeanMillis();
+  }
+
+  public long getRender95thPercentileMillis() {
+    return m_render.getPercentileMillis(95);
+  }
+
+  public long getRenderMaxMillis() {
+    return m_render.getMaxMillis();
+  }
+
+  public long getRenderCacheHitCount() {
+    return RenderCache.INSTANCE.getHitCount();
+  }
+
+  public long getRenderCacheMissCount() {
+    return RenderCache.INSTANCE.getMissCount();
+  }
+
+  public String[] getRenderPhaseTimings() {
+    List<String> lines = Lists.newArrayList();
+    synchronized (m_renderPhases) {
+      for (Map.Entry<String, Histogram> entry : m_renderPhases.entrySet()) {
+        Histogram histogram = entry.getValue();
+        lines.add(entry.getKey()
+            + ": count="
+            + histogram.getCount()
+            + ", mean="
+            + histogram.getMeanMillis()
+            + "ms, 95%="
+            + histogram.getPercentileMillis(95)
+            + "ms, max="
+            + histogram.getMaxMillis()
+            + "ms");
+      }
+    }
+    return lines.toArray(new String[lines.size()]);
+  }
+
+  public long getParseCount() {
+    return m_parse.getCount();
+  }
+
+  public double getParseMeanMillis() {
+    return m_parse.getMeanMillis();
+  }
+
+  public long getParse95thPercentileMillis() {
+    return m_parse.getPercentileMillis(95);
+  }
+
+  public long getParseMaxMillis() {
+    return m_parse.getMaxMillis();
+  }
+
+  public long getFetchCount() {
+    return m_fetch.getCount();
+  }
+
+  public double getFetchMeanMillis() {
+    return m_fetch.getMeanMillis();
+  }
+
+  public long getFetch95thPercentileMillis() {
+    return m_fetch.getPercentileMillis(95);
+  }
+
+  public long getFetchMaxMillis() {
+    return m_fetch.getMaxMillis();
+  }
+
+  public int getLiveSessionCount() {
+    return m_liveSessions.get();
+  }
+
+  public long getResolverBuildCount() {
+    return m_resolverBuilds.get();
+  }
+
+  public long getConvertedImageBytes() {
+    return m_imageBytes.get();
+  }
+
+  public void reset() {
+    m_render.reset();
+    m_parse.reset();
+    m_fetch.reset();
+    synchronized (m_renderPhases) {
+      m_renderPhases.clear();
+    }
+    RenderCache.INSTANCE.resetCounters();
+    m_resolverBuilds.set(0);
+    m_imageBytes.set(0);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Histogram
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Histogram of durations with fixed buckets, so percentiles are approximated by upper bound of
+   * bucket.
+   */
+  private static final class Histogram {
+    private static final long[] BOUNDS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000};
+    private final long[] m_buckets = new long[BOUNDS.length + 1];
+    private long m_count;
+    private long m_totalNanos;
+    private long m_maxNanos;
+
+    private synchronized void record(long nanos) {
+      long millis = nanos / 1000000;
+      int index = 0;
+      while (index < BOUNDS.length && millis >= BOUNDS[index]) {
+        index++;
+      }
+      m_buckets[index]++;
+      m_count++;
+      m_totalNanos += nanos;
+      m_maxNanos = Math.max(m_maxNanos, nanos);
+    }
+
+    private synchronized void reset() {
+      for (int i = 0; i < m_buckets.length; i++) {
+        m_buckets[i] = 0;
+      }
+      m_count = 0;
+      m_totalNanos = 0;
+      m_maxNanos = 0;
+    }
+
+    private synchronized long getCount() {
+      return m_count;
+    }
+
+    private synchronized double getMeanMillis() {
+      return m_count == 0 ? 0 : m_totalNanos / 1000000.0 / m_count;
+    }
+
+    private synchronized long getMaxMillis() {
+      return m_maxNanos / 1000000;
+    }
+
+    /**
+     * @return the upper bound of bucket with given percentile, or maximum if it is in last
+     *         bucket.
+     */
+    private synchronized long getPercentileMillis(int percentile) {
+      long threshold = (m_count * percentile + 99) / 100;
+      long count = 0;
+      for (int i = 0; i < BOUNDS.length; i++) {
+        count += m_buckets[i];
+        if (count >= threshold) {
+          return Math.min(BOUNDS[i], getMaxMillis());
+        }
+      }
+      return getMaxMillis();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal;
+
+/**
+ * JMX interface of {@link AndroidMetrics}. Times are in milliseconds.
+ *
+ * @author mitin_aa
+ * @coverage android
+ */
+public interface AndroidMetricsMBean {
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Rendering
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  long getRenderCount();
+
+  double getRenderMeanMillis();
+
+  long getRender95thPercentileMillis();
+
+  long getRenderMaxMillis();
+
+  long getRenderCacheHitCount();
+
+  long getRenderCacheMissCount();
+
+  /**
+   * @return the statistics of rendering phases, one line per phase.
+   */
+  String[] getRenderPhaseTimings();
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Parsing
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  long getParseCount();
+
+  double getParseMeanMillis();
+
+  long getParse95thPercentileMillis();
+
+  long getParseMaxMillis();
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Fetching
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  long getFetchCount();
+
+  double getFetchMeanMillis();
+
+  long getFetch95thPercentileMillis();
+
+  long getFetchMaxMillis();
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Resources
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  int getLiveSessionCount();
+
+  long getResolverBuildCount();
+
+  long getConvertedImageBytes();
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Operations
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Resets counters and histograms. Number of live sessions is not changed.
+   */
+  void reset();
+}
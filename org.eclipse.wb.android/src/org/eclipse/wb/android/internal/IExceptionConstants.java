@@ -19,4 +19,8 @@ package org.eclipse.wb.android.internal;
 public interface IExceptionConstants {
   int INVALID_BRIDGE_STATE = 6001;
   int BRIDGE_OPERATION_NOT_SUCCESS = 6002;
+  int RENDERING_CANCELLED = 6003;
+  int SDK_NOT_LOADED = 6004;
+  int NO_TARGET = 6005;
+  int SDK_LOADING = 6006;
 }
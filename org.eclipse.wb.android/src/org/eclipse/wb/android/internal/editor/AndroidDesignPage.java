@@ -10,11 +10,27 @@
  *******************************************************************************/
 package org.eclipse.wb.android.internal.editor;
 
+import org.eclipse.wb.android.internal.IExceptionConstants;
 import org.eclipse.wb.android.internal.parser.AndroidEditorContext;
 import org.eclipse.wb.android.internal.parser.AndroidParser;
+import org.eclipse.wb.android.internal.support.SdkLoadSupport;
+import org.eclipse.wb.internal.core.DesignerPlugin;
+import org.eclipse.wb.internal.core.utils.exception.DesignerException;
 import org.eclipse.wb.internal.core.xml.editor.XmlDesignPage;
 import org.eclipse.wb.internal.core.xml.model.XmlObjectInfo;
 
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+import com.android.ide.eclipse.adt.internal.sdk.AndroidTargetData;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * {@link XmlDesignPage} for Android Designer.
@@ -22,7 +38,12 @@ import org.eclipse.wb.internal.core.xml.model.XmlObjectInfo;
  * @author mitin_aa
  * @coverage android.editor
  */
+@SuppressWarnings("restriction")
 public final class AndroidDesignPage extends XmlDesignPage {
+  private WaitLoadJob m_waitJob;
+  private boolean m_waitTimedOut;
+  private boolean m_disposed;
+
   ////////////////////////////////////////////////////////////////////////////
   //
   // Render
@@ -30,7 +51,83 @@ public final class AndroidDesignPage extends XmlDesignPage {
   ////////////////////////////////////////////////////////////////////////////
   @Override
   protected XmlObjectInfo parse() throws Exception {
+    checkTargetLoad();
     AndroidEditorContext context = new AndroidEditorContext(m_file, m_document);
     return new AndroidParser(context).parse();
   }
+
+  @Override
+  public void dispose() {
+    m_disposed = true;
+    if (m_waitJob != null) {
+      m_waitJob.m_future.cancel(false);
+      m_waitJob = null;
+    }
+    super.dispose();
+  }
+
+  /**
+   * If Android SDK or target of project are still loading, shows warning on design page instead of
+   * blocking UI, and parses again as soon as loading is finished.
+   */
+  private void checkTargetLoad() {
+    IProject project = m_file.getProject();
+    Future<AndroidTargetData> future = SdkLoadSupport.whenReady(project);
+    if (future.isDone() || Display.getCurrent() == null) {
+      m_waitTimedOut = false;
+      return;
+    }
+    if (m_waitTimedOut) {
+      // don't wait again, next parse (for example "Reparse") will check again
+      m_waitTimedOut = false;
+      throw new DesignerException(IExceptionConstants.SDK_NOT_LOADED, project.getName());
+    }
+    if (m_waitJob == null) {
+      m_waitJob = new WaitLoadJob(future);
+      m_waitJob.schedule();
+    }
+    throw new DesignerException(IExceptionConstants.SDK_LOADING, project.getName());
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // WaitLoadJob
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Waits in background for loading of SDK and target, then parses layout again in UI thread.
+   */
+  private final class WaitLoadJob extends Job {
+    private final Future<AndroidTargetData> m_future;
+
+    private WaitLoadJob(Future<AndroidTargetData> future) {
+      super("Waiting for Android SDK to load");
+      m_future = future;
+      setSystem(true);
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+      boolean timedOut = false;
+      try {
+        m_future.get(SdkLoadSupport.TIMEOUT, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        timedOut = true;
+      } catch (Throwable e) {
+        // will be reported during parsing
+      }
+      final boolean waitTimedOut = timedOut;
+      DesignerPlugin.getStandardDisplay().asyncExec(new Runnable() {
+        public void run() {
+          if (m_waitJob != WaitLoadJob.this || m_disposed) {
+            return;
+          }
+          m_waitJob = null;
+          m_waitTimedOut = waitTimedOut;
+          refreshGEF();
+        }
+      });
+      return Status.OK_STATUS;
+    }
+  }
 }
@@ -33,6 +33,8 @@ import org.eclipse.wb.internal.core.utils.execution.RunnableEx;
 
 import org.eclipse.swt.graphics.Image;
 
+import java.util.List;
+
 
 /**
  * {@link IEditPartConfigurator} for root {@link EditPart} to show device image.
@@ -65,6 +67,7 @@ public final class DeviceEditPartConfigurator implements IEditPartConfigurator {
     private final ViewInfo object;
     private EditPolicy selectionPolicy;
     private DisplaySkin deviceImage;
+    private Image lastDeviceImage;
 
     ////////////////////////////////////////////////////////////////////////////
     //
@@ -168,8 +171,17 @@ public final class DeviceEditPartConfigurator implements IEditPartConfigurator {
       if (deviceImage != null) {
         Image image = deviceImage.getImage();
         {
-          deviceFigure.setLocation(DEVICE_LOCATION);
-          deviceFigure.setSize(image.getBounds().width, image.getBounds().height);
+          Rectangle deviceBounds =
+              new Rectangle(DEVICE_LOCATION.x,
+                  DEVICE_LOCATION.y,
+                  image.getBounds().width,
+                  image.getBounds().height);
+          if (!deviceBounds.equals(deviceFigure.getBounds())) {
+            deviceFigure.setBounds(deviceBounds);
+          } else if (image != lastDeviceImage) {
+            deviceFigure.repaint();
+          }
+          lastDeviceImage = image;
         }
         // update EditPart figure
         bounds = deviceImage.getClientArea();
@@ -182,7 +194,26 @@ public final class DeviceEditPartConfigurator implements IEditPartConfigurator {
                 bounds.width,
                 bounds.height);
       }
-      editPartFigure.setBounds(bounds);
+      if (bounds.equals(editPartFigure.getBounds())) {
+        // same place, so repaint only changed areas of rendering
+        repaintDirtyRegions(editPartFigure);
+      } else {
+        editPartFigure.setBounds(bounds);
+      }
+    }
+
+    /**
+     * Repaints areas of given {@link Figure} which are changed since previous rendering.
+     */
+    private void repaintDirtyRegions(Figure editPartFigure) {
+      List<Rectangle> regions = object.getAndroidBridge().getDirtyRegions();
+      if (regions == null) {
+        editPartFigure.repaint();
+        return;
+      }
+      for (Rectangle region : regions) {
+        editPartFigure.repaint(region.x, region.y, region.width, region.height);
+      }
     }
   }
 }
@@ -16,6 +16,14 @@ import org.apache.commons.lang.StringUtils;
  * @coverage android.model
  */
 public final class AndroidTagResolver extends NamespacesHelper {
+  /**
+   * Packages of framework Views used with short tag, same as used by LayoutInflater.
+   */
+  private static final String[] FRAMEWORK_PACKAGES = {
+      "android.widget.",
+      "android.webkit.",
+      "android.view."};
+
   ////////////////////////////////////////////////////////////////////////////
   //
   // Constructor
@@ -48,4 +56,26 @@ public final class AndroidTagResolver extends NamespacesHelper {
       tag[0] = className;
     }
   }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Tag to class
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Reverse of tag resolving: tag of framework View is its short name, tag of custom View is
+   * fully-qualified name of its class.
+   *
+   * @return the names of classes which may be used for given tag, in order of lookup.
+   */
+  public static String[] getClassNames(String tag) {
+    if (tag.indexOf('.') != -1) {
+      return new String[]{tag};
+    }
+    String[] classNames = new String[FRAMEWORK_PACKAGES.length];
+    for (int i = 0; i < FRAMEWORK_PACKAGES.length; i++) {
+      classNames[i] = FRAMEWORK_PACKAGES[i] + tag;
+    }
+    return classNames;
+  }
 }
@@ -10,42 +10,26 @@
  *******************************************************************************/
 package org.eclipse.wb.android.internal.model.widgets;
 
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import org.eclipse.wb.android.internal.support.AndroidUtils;
+import org.eclipse.wb.android.internal.support.DependencyGraph;
+import org.eclipse.wb.android.internal.support.DependencyTracker;
 import org.eclipse.wb.core.model.ObjectInfo;
 import org.eclipse.wb.core.model.broadcast.EditorActivatedListener;
 import org.eclipse.wb.core.model.broadcast.EditorActivatedRequest;
+import org.eclipse.wb.core.model.broadcast.ObjectEventListener;
 import org.eclipse.wb.internal.core.model.ObjectInfoVisitor;
-import org.eclipse.wb.internal.core.utils.ast.AstNodeUtils;
-import org.eclipse.wb.internal.core.utils.execution.ExecutionUtils;
-import org.eclipse.wb.internal.core.utils.execution.RunnableEx;
-import org.eclipse.wb.internal.core.utils.jdt.core.CodeUtils;
 import org.eclipse.wb.internal.core.xml.model.IRootProcessor;
 import org.eclipse.wb.internal.core.xml.model.XmlObjectInfo;
 
-import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
-import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.core.dom.ASTVisitor;
-import org.eclipse.jdt.core.dom.CompilationUnit;
-import org.eclipse.jdt.core.dom.ITypeBinding;
-import org.eclipse.jdt.core.dom.QualifiedName;
-import org.eclipse.jdt.core.dom.SimpleName;
 
-
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeSet;
 
 /**
- * The root processor for gathering dependency infos to be able to reparse UI if any dependency
- * changed.
+ * The root processor for gathering dependency infos to be able to reparse or refresh UI if any
+ * dependency changed.
  * 
  * @author mitin_aa
  * @coverage android.model
@@ -73,45 +57,30 @@ public final class AndroidRootProcessor implements IRootProcessor {
   }
 
   /**
-   * 
+   * Installs {@link DependencyTracker} which collects changes of resources used by layout. When
+   * editor activated, changes of custom views or attributes cause reparse, other changes cause only
+   * refresh, i.e. rendering with new resources.
    */
   private void setupDependencyChecks(final ViewInfo object) throws Exception {
-    final Map<IResource, Long> dependencies = Maps.newHashMap();
-    addResources(object, dependencies);
-    addJavaDependencies(object, dependencies);
+    final DependencyTracker tracker = new DependencyTracker(object.getContext().getFile());
+    addJavaDependencies(object, tracker);
+    tracker.install();
     object.addBroadcastListener(new EditorActivatedListener() {
       public void invoke(EditorActivatedRequest request) throws Exception {
-        if (hasModifiedResource()) {
+        int changes = tracker.takeChanges();
+        if ((changes & DependencyTracker.REPARSE_CHANGES) != 0) {
           request.requestReparse();
-        }
-      }
-
-      private boolean hasModifiedResource() {
-        synchronized (dependencies) {
-          for (Entry<IResource, Long> entry : dependencies.entrySet()) {
-            IResource resource = entry.getKey();
-            if (resource.getModificationStamp() != entry.getValue()) {
-              return true;
-            }
-          }
-          return false;
+        } else if (changes != 0) {
+          request.requestRefresh();
         }
       }
     });
-  }
-
-  /**
-   * Adds files for modification checking, ex., "attrs.xml"
-   */
-  private static void addResources(ViewInfo object, Map<IResource, Long> resourceStamps) {
-    {
-      // add attrs.xml
-      IProject project = object.getContext().getJavaProject().getProject();
-      IFile file = project.getFile("res/values/attrs.xml");
-      if (file != null && file.isAccessible()) {
-        resourceStamps.put(file, file.getModificationStamp());
+    object.addBroadcastListener(new ObjectEventListener() {
+      @Override
+      public void dispose() throws Exception {
+        tracker.uninstall();
       }
-    }
+    });
   }
 
   ////////////////////////////////////////////////////////////////////////////
@@ -120,12 +89,12 @@ public final class AndroidRootProcessor implements IRootProcessor {
   //
   ////////////////////////////////////////////////////////////////////////////
   /**
-   * Remembers dependency information for given java type, i.e. time stamps for referenced types.
+   * Requests source files of custom views used in hierarchy and of types they depend on, found
+   * files are tracked by given {@link DependencyTracker}.
    */
-  private static void addJavaDependencies(XmlObjectInfo xmlObjectInfo,
-      final Map<IResource, Long> dependencies) throws Exception {
-    final Set<Class<?>> found = Sets.newHashSet();
-    final IJavaProject javaProject = xmlObjectInfo.getContext().getJavaProject();
+  private static void addJavaDependencies(XmlObjectInfo xmlObjectInfo, DependencyTracker tracker)
+      throws Exception {
+    final Set<String> found = Sets.newHashSet();
     // traverse xml hierarchy and store non-framework types used.
     xmlObjectInfo.accept(new ObjectInfoVisitor() {
       @Override
@@ -134,84 +103,17 @@ public final class AndroidRootProcessor implements IRootProcessor {
           ViewInfo viewInfo = (ViewInfo) objectInfo;
           Class<?> componentClass = viewInfo.getDescription().getComponentClass();
           if (!AndroidUtils.isFrameworkClass(componentClass)) {
-            found.add(componentClass);
+            found.add(componentClass.getName());
           }
         }
         super.endVisit(objectInfo);
       }
     });
-    // schedule thread gathering dependencies.
+    // dependencies are searched in background, using graph shared by all editors.
     if (!found.isEmpty()) {
-      new Thread("WindowBuilder dependency search") {
-        @Override
-        public void run() {
-          ExecutionUtils.runIgnore(new RunnableEx() {
-            public void run() throws Exception {
-              synchronized (dependencies) {
-                TreeSet<String> checkedTypes = Sets.<String>newTreeSet();
-                for (Class<?> componentClass : found) {
-                  String typeName = componentClass.getName();
-                  IType type = javaProject.findType(typeName);
-                  addDependencies(dependencies, checkedTypes, type.getCompilationUnit(), 0);
-                }
-              }
-            }
-          });
-        }
-      }.start();
-    }
-  }
-
-  ////////////////////////////////////////////////////////////////////////////
-  //
-  // Copied from JIU
-  //
-  ////////////////////////////////////////////////////////////////////////////
-  /**
-   * Adds dependencies for given {@link ICompilationUnit}.
-   */
-  private static void addDependencies(final Map<IResource, Long> dependencies,
-      final Set<String> checkedTypes,
-      final ICompilationUnit modelUnit,
-      final int level) throws Exception {
-    if (level < 5 && dependencies.size() < 100) {
-      final IJavaProject javaProject = modelUnit.getJavaProject();
-      // add current resource
-      {
-        IResource resource = modelUnit.getResource();
-        dependencies.put(resource, resource.getModificationStamp());
-      }
-      // add references
-      CompilationUnit astUnit = CodeUtils.parseCompilationUnit(modelUnit);
-      astUnit.accept(new ASTVisitor() {
-        @Override
-        public void endVisit(QualifiedName node) {
-          addNewType(node.resolveTypeBinding());
-        }
-
-        @Override
-        public void endVisit(SimpleName node) {
-          addNewType(node.resolveTypeBinding());
-        }
-
-        private void addNewType(final ITypeBinding binding) {
-          if (binding == null) {
-            return;
-          }
-          ExecutionUtils.runIgnore(new RunnableEx() {
-            public void run() throws Exception {
-              String typeName = AstNodeUtils.getFullyQualifiedName(binding, false);
-              if (typeName.indexOf('.') != -1 && !checkedTypes.contains(typeName)) {
-                checkedTypes.add(typeName);
-                IType type = javaProject.findType(typeName);
-                if (type != null && !type.isBinary()) {
-                  addDependencies(dependencies, checkedTypes, type.getCompilationUnit(), level + 1);
-                }
-              }
-            }
-          });
-        }
-      });
+      tracker.setTrackClasses(true);
+      IJavaProject javaProject = xmlObjectInfo.getContext().getJavaProject();
+      DependencyGraph.INSTANCE.requestSources(javaProject, found, tracker);
     }
   }
 }
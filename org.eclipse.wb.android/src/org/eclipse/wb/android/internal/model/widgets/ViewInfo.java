@@ -13,6 +13,7 @@ package org.eclipse.wb.android.internal.model.widgets;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import org.eclipse.wb.android.internal.AndroidMetrics;
 import org.eclipse.wb.android.internal.model.util.MorphingSupport;
 import org.eclipse.wb.android.internal.parser.AndroidEditorContext;
 import org.eclipse.wb.android.internal.parser.AndroidHierarchyBuilder;
@@ -23,6 +24,7 @@ import org.eclipse.wb.draw2d.geometry.Insets;
 import org.eclipse.wb.draw2d.geometry.Rectangle;
 import org.eclipse.wb.internal.core.model.ObjectInfoVisitor;
 import org.eclipse.wb.internal.core.model.property.Property;
+import org.eclipse.wb.internal.core.utils.execution.ExecutionUtils;
 import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
 import org.eclipse.wb.internal.core.xml.model.AbstractComponentInfo;
 import org.eclipse.wb.internal.core.xml.model.EditorContext;
@@ -124,13 +126,37 @@ public class ViewInfo extends AbstractComponentInfo {
           return true;
         }
       });
-      // render...
+      // render, refresh again when rendering is finished
+      boolean withDefaults = false;
+      for (XmlObjectInfo objectInfo : doc2Child.values()) {
+        withDefaults |= objectInfo.getArbitraryValue(FLAG_HAS_DEFAULT_PROPERTIES) != Boolean.TRUE;
+      }
       AndroidBridge androidBridge = getAndroidBridge();
-      androidBridge.render();
+      final boolean rendered = androidBridge.render(withDefaults, new Runnable() {
+        public void run() {
+          ExecutionUtils.refresh(m_this);
+        }
+      });
+      getAndroidContext().addRenderWarnings();
       // remove fake children
       for (DocumentElement documentElement : emptyChildrenElements) {
         documentElement.remove();
       }
+      // fetch default values from objects without attributes
+      androidBridge.acceptDefaults(new AndroidHierarchyBuilder() {
+        @Override
+        public ObjectInfo visit(com.android.ide.common.rendering.api.ViewInfo nativeView,
+            ObjectInfo parent) throws Exception {
+          XmlObjectInfo objectInfo = doc2Child.get(nativeView.getCookie());
+          if (objectInfo != null
+              && nativeView.getViewObject() != null
+              && objectInfo.getArbitraryValue(FLAG_HAS_DEFAULT_PROPERTIES) != Boolean.TRUE) {
+            objectInfo.setObject(nativeView.getViewObject());
+            objectInfo.putArbitraryValue(FLAG_HAS_DEFAULT_PROPERTIES, Boolean.TRUE);
+          }
+          return objectInfo;
+        }
+      });
       // process objects
       androidBridge.accept(new AndroidHierarchyBuilder() {
         @Override
@@ -142,7 +168,10 @@ public class ViewInfo extends AbstractComponentInfo {
             return null;
           }
           // for newly created components it needs to fetch default values
-          if (objectInfo.getArbitraryValue(FLAG_HAS_DEFAULT_PROPERTIES) != Boolean.TRUE) {
+          if (!rendered) {
+            // objects of previous rendering, may be changed by rendering thread
+            objectInfo.setObjectReadySent(true);
+          } else if (objectInfo.getArbitraryValue(FLAG_HAS_DEFAULT_PROPERTIES) != Boolean.TRUE) {
             objectInfo.putArbitraryValue(FLAG_HAS_DEFAULT_PROPERTIES, Boolean.TRUE);
           } else {
             // skip re-fetch default values as they are may be changed already
@@ -163,11 +192,36 @@ public class ViewInfo extends AbstractComponentInfo {
 
   @Override
   protected void refresh_fetch() throws Exception {
+    if (isRoot()) {
+      // children are fetched during fetching of root, so measure only root
+      long start = System.nanoTime();
+      try {
+        refresh_fetch0();
+      } finally {
+        AndroidMetrics.INSTANCE.fetchFinished(start);
+      }
+    } else {
+      refresh_fetch0();
+    }
+  }
+
+  private void refresh_fetch0() throws Exception {
     if (isRoot()) {
       AndroidEditorContext androidContext = getAndroidContext();
       Image image = androidContext.getAndroidBridge().getImage();
       setImage(image);
     }
+    // not rendered yet
+    if (m_androidViewInfo == null) {
+      if (isRoot()) {
+        setClientAreaInsets(new Insets());
+        setModelBounds(new Rectangle(getImage().getBounds()));
+      } else {
+        setModelBounds(new Rectangle());
+      }
+      super.refresh_fetch();
+      return;
+    }
     // prepare model bounds
     Rectangle modelBounds;
     {
@@ -10,12 +10,16 @@
  *******************************************************************************/
 package org.eclipse.wb.android.internal.parser;
 
+import com.google.common.collect.Sets;
+
 import org.eclipse.wb.android.internal.AndroidToolkitDescription;
 import org.eclipse.wb.android.internal.support.AndroidBridge;
+import org.eclipse.wb.android.internal.support.render.RenderDiagnostics;
 import org.eclipse.wb.internal.core.model.description.resource.IDescriptionVersionsProvider;
 import org.eclipse.wb.internal.core.model.description.resource.IDescriptionVersionsProviderFactory;
 import org.eclipse.wb.internal.core.utils.external.ExternalFactoriesHelper;
 import org.eclipse.wb.internal.core.utils.reflect.CompositeClassLoader;
+import org.eclipse.wb.internal.core.utils.state.EditorWarning;
 import org.eclipse.wb.internal.core.xml.model.EditorContext;
 import org.eclipse.wb.internal.core.xml.model.ILiveEditorContext;
 import org.eclipse.wb.internal.core.xml.model.XmlObjectInfo;
@@ -27,6 +31,7 @@ import org.eclipse.jface.text.IDocument;
 import org.apache.commons.lang.NotImplementedException;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * {@link EditorContext} for Android.
@@ -37,6 +42,7 @@ import java.util.List;
  */
 public final class AndroidEditorContext extends EditorContext {
   private AndroidBridge m_androidBridge;
+  private final Set<String> m_renderWarnings = Sets.newHashSet();
 
   ////////////////////////////////////////////////////////////////////////////
   //
@@ -77,6 +83,25 @@ public final class AndroidEditorContext extends EditorContext {
     return m_androidBridge;
   }
 
+  /**
+   * Shows messages reported by layoutlib during last rendering as editor warnings. Each distinct
+   * message is added once, even if it is reported by each refresh.
+   */
+  public void addRenderWarnings() {
+    RenderDiagnostics diagnostics = m_androidBridge.getDiagnostics();
+    for (RenderDiagnostics.Message message : diagnostics.getMessages()) {
+      String key = message.getKind() + "/" + message.getTag() + "/" + message.getText();
+      if (m_renderWarnings.add(key)) {
+        addWarning(new EditorWarning(message.toString(), message.getThrowable()));
+      }
+    }
+    int suppressed = diagnostics.getSuppressedCount();
+    if (suppressed != 0 && m_renderWarnings.add("suppressed")) {
+      addWarning(new EditorWarning(suppressed
+          + " more layout library message(s) were not shown."));
+    }
+  }
+
   ////////////////////////////////////////////////////////////////////////////
   //
   // ClassLoader
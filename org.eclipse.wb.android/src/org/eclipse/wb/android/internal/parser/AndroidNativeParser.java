@@ -1,9 +1,9 @@
 package org.eclipse.wb.android.internal.parser;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
+import org.eclipse.wb.internal.core.utils.xml.DocumentAttribute;
 import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
-import org.eclipse.wb.internal.core.xml.model.utils.NamespacesHelper;
 
 import com.android.ide.common.rendering.api.ILayoutPullParser;
 import com.android.ide.eclipse.adt.internal.editors.layout.BasePullParser;
@@ -12,21 +12,47 @@ import org.apache.commons.lang.StringUtils;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Custom parser that implements {@link ILayoutPullParser} (which itself extends
  * {@link XmlPullParser}).
+ * <p>
+ * Elements are walked using flat pre-order snapshot of tree built in constructor: for each element
+ * its index of next sibling is known, so moving to next element does not search in children of
+ * parent and does not allocate. Attributes of all elements are stored in flat arrays too, with
+ * resolved namespace URIs, so they can be accessed by index or by namespace and local name without
+ * building qualified names. After construction the parser does not read {@link DocumentElement}'s,
+ * so it can be used in other thread than one which changes them.
  * 
  * @author mitin_aa
  * @coverage android.parser
  */
 @SuppressWarnings("restriction")
 public final class AndroidNativeParser extends BasePullParser {
-  private final List<DocumentElement> mNodeStack = Lists.newArrayList();
+  private static final String XMLNS = "xmlns";
+  private static final String XMLNS_PREFIX = "xmlns:";
   private final DocumentElement mRoot;
-  private final NamespacesHelper mNamespacesHelper;
   private final boolean mParseOnly;
+  // pre-order snapshot
+  private DocumentElement[] mNodes;
+  private String[] mTagNames;
+  private String[] mTagNamespaces;
+  private int[] mNextSiblings;
+  private boolean[] mHasChildren;
+  private int mNodeCount;
+  // attributes of element 'i' are from mAttributeStarts[i] to mAttributeStarts[i + 1]
+  private int[] mAttributeStarts;
+  private String[] mAttributeNamespaces;
+  private String[] mAttributePrefixes;
+  private String[] mAttributeNames;
+  private String[] mAttributeValues;
+  private int mAttributeCount;
+  // indices of open elements
+  private int[] mNodeStack;
+  private int mDepth;
 
   public AndroidNativeParser(DocumentElement rootElement) {
     this(rootElement, false);
@@ -35,10 +61,133 @@ public final class AndroidNativeParser extends BasePullParser {
   public AndroidNativeParser(DocumentElement rootElement, boolean parseOnly) {
     mRoot = rootElement;
     mParseOnly = parseOnly;
-    mNamespacesHelper = new NamespacesHelper(mRoot);
-    push(mRoot);
+    createSnapshot();
+    push(0);
   }
 
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Snapshot
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Fills arrays of pre-order snapshot of elements.
+   */
+  private void createSnapshot() {
+    int[] attributeCount = new int[1];
+    int count = getElementCount(mRoot, attributeCount);
+    mNodes = new DocumentElement[count];
+    mTagNames = new String[count];
+    mTagNamespaces = new String[count];
+    mNextSiblings = new int[count];
+    mHasChildren = new boolean[count];
+    mAttributeStarts = new int[count + 1];
+    mAttributeNamespaces = new String[attributeCount[0]];
+    mAttributePrefixes = new String[attributeCount[0]];
+    mAttributeNames = new String[attributeCount[0]];
+    mAttributeValues = new String[attributeCount[0]];
+    Map<String, String> namespaces = Collections.emptyMap();
+    int maxDepth = addToSnapshot(mRoot, 1, namespaces);
+    mAttributeStarts[count] = mAttributeCount;
+    mNodeStack = new int[maxDepth];
+  }
+
+  /**
+   * @return the number of elements in given sub-tree, adds number of their attributes to given
+   *         counter.
+   */
+  private static int getElementCount(DocumentElement element, int[] attributeCount) {
+    int count = 1;
+    attributeCount[0] += element.getDocumentAttributes().size();
+    for (DocumentElement child : element.getChildren()) {
+      count += getElementCount(child, attributeCount);
+    }
+    return count;
+  }
+
+  /**
+   * Adds given element and its children to snapshot.
+   *
+   * @return the maximum depth of elements in this sub-tree.
+   */
+  private int addToSnapshot(DocumentElement element, int depth, Map<String, String> namespaces) {
+    int index = mNodeCount++;
+    mNodes[index] = element;
+    mTagNames[index] = element.getTagLocal();
+    mTagNamespaces[index] = element.getTagNS();
+    mNextSiblings[index] = -1;
+    // attributes
+    List<DocumentAttribute> attributes = element.getDocumentAttributes();
+    namespaces = getNamespaces(attributes, namespaces);
+    mAttributeStarts[index] = mAttributeCount;
+    if (!mParseOnly) {
+      for (DocumentAttribute attribute : attributes) {
+        String name = attribute.getName();
+        if (!name.equals(XMLNS) && !name.startsWith(XMLNS_PREFIX)) {
+          addAttribute(name, attribute.getValue(), namespaces);
+        }
+      }
+    } else if ("include".equalsIgnoreCase(element.getTag())) {
+      // parsing needs only included layout
+      String layout = element.getAttribute("layout");
+      if (layout != null) {
+        addAttribute("layout", layout, namespaces);
+      }
+    }
+    // children
+    int maxDepth = depth;
+    int previousChild = -1;
+    for (DocumentElement child : element.getChildren()) {
+      if (previousChild != -1) {
+        mNextSiblings[previousChild] = mNodeCount;
+      }
+      previousChild = mNodeCount;
+      maxDepth = Math.max(maxDepth, addToSnapshot(child, depth + 1, namespaces));
+    }
+    mHasChildren[index] = previousChild != -1;
+    return maxDepth;
+  }
+
+  /**
+   * @return the prefix to namespace URI mapping for element with given attributes.
+   */
+  private static Map<String, String> getNamespaces(List<DocumentAttribute> attributes,
+      Map<String, String> parentNamespaces) {
+    Map<String, String> namespaces = parentNamespaces;
+    for (DocumentAttribute attribute : attributes) {
+      String name = attribute.getName();
+      if (name.startsWith(XMLNS_PREFIX)) {
+        if (namespaces == parentNamespaces) {
+          namespaces = Maps.newHashMap(parentNamespaces);
+        }
+        namespaces.put(name.substring(XMLNS_PREFIX.length()), attribute.getValue().intern());
+      }
+    }
+    return namespaces;
+  }
+
+  private void addAttribute(String name, String value, Map<String, String> namespaces) {
+    int index = mAttributeCount++;
+    int separator = name.indexOf(':');
+    if (separator == -1) {
+      mAttributeNamespaces[index] = NO_NAMESPACE;
+      mAttributeNames[index] = name.intern();
+    } else {
+      String prefix = name.substring(0, separator);
+      String namespace = namespaces.get(prefix);
+      // undeclared prefix, use it instead of URI, so it does not match any namespace
+      mAttributeNamespaces[index] = namespace != null ? namespace : prefix.intern();
+      mAttributePrefixes[index] = prefix.intern();
+      mAttributeNames[index] = name.substring(separator + 1).intern();
+    }
+    mAttributeValues[index] = value;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // ILayoutPullParser
+  //
+  ////////////////////////////////////////////////////////////////////////////
   public ILayoutPullParser getParser(String s) {
     return null;
   }
@@ -48,70 +197,73 @@ public final class AndroidNativeParser extends BasePullParser {
   }
 
   public int getAttributeCount() {
-    DocumentElement node = getCurrentNode();
-    if (node != null) {
-      if (mParseOnly) {
-        if ("include".equalsIgnoreCase(node.getTag())) {
-          return node.getAttribute("layout") == null ? 0 : 1;
-        }
-        return 0;
-      }
-      return node.getDocumentAttributes().size();
+    if (mDepth == 0) {
+      return 0;
     }
-    return 0;
+    int index = mNodeStack[mDepth - 1];
+    return mAttributeStarts[index + 1] - mAttributeStarts[index];
   }
 
   public String getAttributeName(int i) {
-    return null;
+    return mAttributeNames[getAttributeIndex(i)];
   }
 
   public String getAttributeNamespace(int i) {
-    return null;
+    return mAttributeNamespaces[getAttributeIndex(i)];
   }
 
   public String getAttributePrefix(int i) {
-    return null;
+    return mAttributePrefixes[getAttributeIndex(i)];
   }
 
   public String getAttributeValue(int i) {
-    return null;
+    return mAttributeValues[getAttributeIndex(i)];
   }
 
   public String getAttributeValue(String namespace, String localName) {
-    DocumentElement node = getCurrentNode();
-    if (mParseOnly) {
-      if (!("include".equalsIgnoreCase(node.getTag()) && "layout".equalsIgnoreCase(localName))) {
-        return null;
+    if (StringUtils.isEmpty(namespace)) {
+      namespace = NO_NAMESPACE;
+    }
+    int index = mNodeStack[mDepth - 1];
+    int end = mAttributeStarts[index + 1];
+    for (int i = mAttributeStarts[index]; i < end; i++) {
+      if (localName.equals(mAttributeNames[i]) && namespace.equals(mAttributeNamespaces[i])) {
+        return mAttributeValues[i];
       }
     }
-    if (StringUtils.isEmpty(namespace)) {
-      return node.getAttribute(localName);
-    } else {
-      String ns = mNamespacesHelper.getName(namespace);
-      return node.getAttribute(ns + ":" + localName);
+    return null;
+  }
+
+  /**
+   * @return the index in attribute arrays for given attribute of current element.
+   */
+  private int getAttributeIndex(int i) {
+    if (i < 0 || i >= getAttributeCount()) {
+      throw new IndexOutOfBoundsException("Attribute index: " + i);
     }
+    return mAttributeStarts[mNodeStack[mDepth - 1]] + i;
   }
 
   public int getDepth() {
-    return mNodeStack.size();
+    return mDepth;
   }
 
   public String getName() {
     if (mParsingState == START_TAG || mParsingState == END_TAG) {
-      return getCurrentNode().getTagLocal();
+      return mTagNames[mNodeStack[mDepth - 1]];
     }
     return null;
   }
 
   public String getNamespace() {
     if (mParsingState == START_TAG || mParsingState == END_TAG) {
-      return getCurrentNode().getTagNS();
+      return mTagNamespaces[mNodeStack[mDepth - 1]];
     }
     return null;
   }
 
   public String getPositionDescription() {
-    return "XML DOM element depth:" + mNodeStack.size();
+    return "XML DOM element depth:" + mDepth;
   }
 
   public String getPrefix() {
@@ -120,7 +272,7 @@ public final class AndroidNativeParser extends BasePullParser {
 
   public boolean isEmptyElementTag() throws XmlPullParserException {
     if (mParsingState == START_TAG) {
-      return getCurrentNode().getChildren().size() == 0;
+      return !mHasChildren[mNodeStack[mDepth - 1]];
     }
     throw new XmlPullParserException("Call to isEmptyElementTag while not in START_TAG", this, null);
   }
@@ -133,11 +285,10 @@ public final class AndroidNativeParser extends BasePullParser {
   @Override
   public void onNextFromStartTag() {
     // get the current node, and look for text or children (children first)
-    DocumentElement node = getCurrentNode();
-    List<DocumentElement> children = node.getChildren();
-    if (children.size() > 0) {
-      // move to the new child, and don't change the state.
-      push(children.get(0));
+    int index = mNodeStack[mDepth - 1];
+    if (mHasChildren[index]) {
+      // move to the new child (next in pre-order), and don't change the state.
+      push(index + 1);
       // in case the current state is CURRENT_DOC, we set the proper state.
       mParsingState = START_TAG;
     } else {
@@ -151,36 +302,33 @@ public final class AndroidNativeParser extends BasePullParser {
   }
 
   private DocumentElement getCurrentNode() {
-    if (mNodeStack.size() > 0) {
-      return mNodeStack.get(mNodeStack.size() - 1);
+    if (mDepth > 0) {
+      return mNodes[mNodeStack[mDepth - 1]];
     }
     return null;
   }
 
-  private void push(DocumentElement node) {
-    mNodeStack.add(node);
+  private void push(int index) {
+    mNodeStack[mDepth++] = index;
   }
 
-  private DocumentElement pop() {
-    return mNodeStack.remove(mNodeStack.size() - 1);
+  private void pop() {
+    mDepth--;
   }
 
   @Override
   public void onNextFromEndTag() {
     // look for a sibling. if no sibling, go back to the parent
-    DocumentElement node = getCurrentNode();
-    node = getNextSibling(node);
-    if (node != null) {
-      // to go to the sibling, we need to remove the current node,
-      pop();
-      // and add its sibling.
-      push(node);
+    int sibling = mNextSiblings[mNodeStack[mDepth - 1]];
+    if (sibling != -1) {
+      // to go to the sibling, replace the current node
+      mNodeStack[mDepth - 1] = sibling;
       mParsingState = START_TAG;
     } else {
       // move back to the parent
       pop();
       // we have only one element left (mRoot), then we're done with the document.
-      if (mNodeStack.size() == 1) {
+      if (mDepth == 1) {
         mParsingState = END_DOCUMENT;
       } else {
         mParsingState = END_TAG;
@@ -188,21 +336,6 @@ public final class AndroidNativeParser extends BasePullParser {
     }
   }
 
-  private DocumentElement getNextSibling(DocumentElement node) {
-    DocumentElement parent = node.getParent();
-    if (parent == null) {
-      // root node
-      return null;
-    }
-    List<DocumentElement> children = parent.getChildren();
-    int childrenCount = children.size();
-    if (childrenCount > 1 && parent.getChildAt(childrenCount - 1) != node) {
-      int index = parent.indexOf(node);
-      return index >= 0 && index < childrenCount - 1 ? children.get(index + 1) : null;
-    }
-    return null;
-  }
-
   @SuppressWarnings("deprecation")
   public Object getViewKey() {
     return getViewCookie();
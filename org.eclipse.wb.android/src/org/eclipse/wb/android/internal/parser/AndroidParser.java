@@ -10,9 +10,15 @@
  *******************************************************************************/
 package org.eclipse.wb.android.internal.parser;
 
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.android.internal.AndroidMetrics;
+import org.eclipse.wb.android.internal.AndroidToolkitDescription;
 import org.eclipse.wb.android.internal.model.util.AndroidListenerProperties;
 import org.eclipse.wb.android.internal.model.util.AndroidTagResolver;
 import org.eclipse.wb.android.internal.model.widgets.ViewInfo;
+import org.eclipse.wb.android.internal.preferences.IPreferenceConstants;
+import org.eclipse.wb.android.internal.support.AndroidBridge;
 import org.eclipse.wb.core.model.ObjectInfo;
 import org.eclipse.wb.core.model.broadcast.ObjectInfoTreeComplete;
 import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
@@ -22,6 +28,7 @@ import org.eclipse.wb.internal.core.xml.model.creation.ElementCreationSupport;
 import org.eclipse.wb.internal.core.xml.model.utils.GlobalStateXml;
 import org.eclipse.wb.internal.core.xml.model.utils.XmlObjectUtils;
 
+import java.util.Map;
 
 /**
  * Parser for Android UI.
@@ -48,13 +55,25 @@ public final class AndroidParser {
   //
   ////////////////////////////////////////////////////////////////////////////
   public XmlObjectInfo parse() throws Exception {
+    long start = System.nanoTime();
+    try {
+      return parse0();
+    } finally {
+      AndroidMetrics.INSTANCE.parseFinished(start);
+    }
+  }
+
+  private XmlObjectInfo parse0() throws Exception {
     // prepare for parsing
     GlobalStateXml.setEditorContext(m_context);
     m_context.initialize();
     m_context.setParsing(true);
     //
-    m_context.getAndroidBridge().parse();
-    buildHierarhy();
+    if (!parseModel()) {
+      m_context.getAndroidBridge().parse();
+      buildHierarhy();
+      m_context.addRenderWarnings();
+    }
     // done
     m_context.setParsing(false);
     XmlObjectUtils.callRootProcessors(m_rootModel);
@@ -67,6 +86,76 @@ public final class AndroidParser {
     return m_rootModel;
   }
 
+  /**
+   * Builds hierarchy of models directly from {@link DocumentElement}'s, without rendering: classes
+   * of framework Views are loaded by tag names, using rules of {@link AndroidTagResolver}. Objects
+   * are bound to models later, by rendering during refresh, so layoutlib session is not created
+   * twice. Default values of properties are fetched from objects rendered without attributes, see
+   * {@link AndroidBridge#render(boolean, Runnable)}.
+   *
+   * @return <code>false</code> if this mode is disabled or layout has elements which can be
+   *         resolved only by rendering, such as includes, fragments and custom Views.
+   */
+  private boolean parseModel() throws Exception {
+    if (!AndroidToolkitDescription.INSTANCE.getPreferences().getBoolean(
+        IPreferenceConstants.P_MODEL_ONLY_PARSE)) {
+      return false;
+    }
+    DocumentElement rootElement = m_context.getRootElement();
+    Map<DocumentElement, Class<?>> classes = Maps.newHashMap();
+    if (!resolveClasses(rootElement, classes)) {
+      return false;
+    }
+    m_rootModel = createModel(rootElement, classes);
+    return true;
+  }
+
+  /**
+   * Loads component classes for given element and its children.
+   *
+   * @return <code>false</code> if class of some element can not be loaded.
+   */
+  private boolean resolveClasses(DocumentElement element, Map<DocumentElement, Class<?>> classes)
+      throws Exception {
+    String tag = element.getTag();
+    if ("requestFocus".equals(tag)) {
+      // not a View
+      return true;
+    }
+    if ("view".equals(tag)) {
+      tag = element.getAttribute("class");
+    }
+    AndroidBridge bridge = m_context.getAndroidBridge();
+    Class<?> componentClass = tag != null ? bridge.getFrameworkViewClass(tag) : null;
+    if (componentClass == null) {
+      return false;
+    }
+    classes.put(element, componentClass);
+    for (DocumentElement child : element.getChildren()) {
+      if (!resolveClasses(child, classes)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the model for given element, with models of children.
+   */
+  private XmlObjectInfo createModel(DocumentElement element,
+      Map<DocumentElement, Class<?>> classes) throws Exception {
+    CreationSupport creationSupport = new ElementCreationSupport(element);
+    XmlObjectInfo objectInfo =
+        XmlObjectUtils.createObject(m_context, classes.get(element), creationSupport);
+    GlobalStateXml.activate(objectInfo);
+    for (DocumentElement child : element.getChildren()) {
+      if (classes.containsKey(child)) {
+        objectInfo.addChild(createModel(child, classes));
+      }
+    }
+    return objectInfo;
+  }
+
   /**
    * 
    */
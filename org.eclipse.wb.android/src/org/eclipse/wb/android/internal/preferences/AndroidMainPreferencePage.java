@@ -1,7 +1,6 @@
 package org.eclipse.wb.android.internal.preferences;
 
 import org.eclipse.wb.android.internal.ToolkitProvider;
-import org.eclipse.wb.internal.core.preferences.IPreferenceConstants;
 import org.eclipse.wb.internal.core.preferences.bind.AbstractBindingPreferencesPage;
 import org.eclipse.wb.internal.core.utils.binding.DataBindManager;
 import org.eclipse.wb.internal.core.utils.ui.AbstractBindingComposite;
@@ -73,6 +72,16 @@ public final class AndroidMainPreferencePage extends AbstractBindingPreferencesP
           2,
           PreferencesMessages.MainPreferencePage_autoDirectEdit,
           IPreferenceConstants.P_GENERAL_DIRECT_EDIT_AFTER_ADD);
+      checkButton(
+          this,
+          2,
+          PreferencesMessages.MainPreferencePage_warmUpOnStartup,
+          IPreferenceConstants.P_WARM_UP_ON_STARTUP);
+      checkButton(
+          this,
+          2,
+          PreferencesMessages.MainPreferencePage_modelOnlyParse,
+          IPreferenceConstants.P_MODEL_ONLY_PARSE);
     }
   }
 }
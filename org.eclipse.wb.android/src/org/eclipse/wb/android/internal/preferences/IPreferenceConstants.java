@@ -21,4 +21,6 @@ public interface IPreferenceConstants
       org.eclipse.wb.internal.core.preferences.IPreferenceConstants {
   String TOOLKIT_ID = "org.eclipse.wb.android";
   String P_ANDROID_SDK_LOCATION = TOOLKIT_ID + ".sdk.location";
+  String P_WARM_UP_ON_STARTUP = TOOLKIT_ID + ".warmUpOnStartup";
+  String P_MODEL_ONLY_PARSE = TOOLKIT_ID + ".modelOnlyParse";
 }
@@ -11,7 +11,6 @@
 package org.eclipse.wb.android.internal.preferences;
 
 import org.eclipse.wb.android.internal.ToolkitProvider;
-import org.eclipse.wb.internal.core.preferences.IPreferenceConstants;
 
 import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -32,5 +31,8 @@ public final class PreferenceInitializer extends AbstractPreferenceInitializer {
     preferences.setDefault(IPreferenceConstants.P_GENERAL_TEXT_SUFFIX, true);
     preferences.setDefault(IPreferenceConstants.P_GENERAL_IMPORTANT_PROPERTIES_AFTER_ADD, false);
     preferences.setDefault(IPreferenceConstants.P_GENERAL_DIRECT_EDIT_AFTER_ADD, true);
+    // rendering
+    preferences.setDefault(IPreferenceConstants.P_WARM_UP_ON_STARTUP, true);
+    preferences.setDefault(IPreferenceConstants.P_MODEL_ONLY_PARSE, true);
   }
 }
@@ -9,6 +9,8 @@ public class PreferencesMessages extends NLS {
   public static String MainPreferencePage_highlightBorders;
   public static String MainPreferencePage_showImportantProperties;
   public static String MainPreferencePage_showTextInComponentsTree;
+  public static String MainPreferencePage_warmUpOnStartup;
+  public static String MainPreferencePage_modelOnlyParse;
   static {
     // initialize resource bundle
     NLS.initializeMessages(BUNDLE_NAME, PreferencesMessages.class);
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.startup;
+
+import org.eclipse.wb.android.internal.Activator;
+import org.eclipse.wb.android.internal.preferences.IPreferenceConstants;
+
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.ui.IStartup;
+
+/**
+ * {@link IStartup} which activates plugin when workbench starts, so warm up scheduled by
+ * {@link Activator} runs before first Android editor is opened, not together with it.
+ * <p>
+ * This package is excluded from lazy activation, so loading of this class does not activate
+ * plugin. Preference is read directly from instance scope, and plugin (and so ADT) is activated
+ * only if warm up is enabled.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class WarmUpStartup implements IStartup {
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // IStartup
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public void earlyStartup() {
+    // default value is same as in PreferenceInitializer, which is not used to avoid activation
+    boolean warmUp =
+        new InstanceScope().getNode(Activator.PLUGIN_ID).getBoolean(
+            IPreferenceConstants.P_WARM_UP_ON_STARTUP,
+            true);
+    if (warmUp) {
+      // loading of Activator activates plugin, it schedules warm up
+      Activator.getDefault();
+    }
+  }
+}
@@ -13,23 +13,43 @@ package org.eclipse.wb.android.internal.support;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import org.eclipse.wb.android.internal.AndroidMetrics;
 import org.eclipse.wb.android.internal.IExceptionConstants;
+import org.eclipse.wb.android.internal.model.util.AndroidTagResolver;
 import org.eclipse.wb.android.internal.parser.AndroidHierarchyBuilder;
-import org.eclipse.wb.android.internal.parser.AndroidNativeParser;
 import org.eclipse.wb.android.internal.support.DeviceManager.DisplayMetrics;
+import org.eclipse.wb.android.internal.support.WarmUpJob.Standby;
+import org.eclipse.wb.android.internal.support.render.ImageConverter;
+import org.eclipse.wb.android.internal.support.render.LayoutSnapshot;
+import org.eclipse.wb.android.internal.support.render.RenderCache;
+import org.eclipse.wb.android.internal.support.render.RenderDiagnostics;
+import org.eclipse.wb.android.internal.support.render.RenderResult;
+import org.eclipse.wb.android.internal.support.render.RenderScheduler;
+import org.eclipse.wb.android.internal.support.render.RenderScheduler.IRenderCallback;
+import org.eclipse.wb.android.internal.support.render.RenderScheduler.RenderTask;
+import org.eclipse.wb.android.internal.support.render.RenderSessionManager;
+import org.eclipse.wb.android.internal.support.resources.AttrsParserCache;
+import org.eclipse.wb.android.internal.support.resources.FrameworkResourcesCache;
+import org.eclipse.wb.android.internal.support.resources.ProjectAttributesIndex;
+import org.eclipse.wb.android.internal.support.resources.ProjectChangesTracker;
+import org.eclipse.wb.android.internal.support.resources.ResourceResolverCache;
+import org.eclipse.wb.android.internal.support.resources.ThemeIndex;
 import org.eclipse.wb.core.model.ObjectInfo;
-import org.eclipse.wb.internal.core.utils.IOUtils2;
-import org.eclipse.wb.internal.core.utils.asm.ToBytesClassAdapter;
+import org.eclipse.wb.draw2d.geometry.Rectangle;
+import org.eclipse.wb.internal.core.DesignerPlugin;
 import org.eclipse.wb.internal.core.utils.exception.DesignerException;
 import org.eclipse.wb.internal.core.utils.execution.ExecutionUtils;
 import org.eclipse.wb.internal.core.utils.execution.RunnableObjectEx;
 import org.eclipse.wb.internal.core.utils.reflect.ReflectionUtils;
-import org.eclipse.wb.internal.core.utils.ui.ImageUtils;
+import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
 import org.eclipse.wb.internal.core.xml.model.EditorContext;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
 
 import com.android.ide.common.rendering.LayoutLibrary;
 import com.android.ide.common.rendering.api.ILayoutPullParser;
@@ -41,39 +61,25 @@ import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.ide.common.rendering.api.Result;
 import com.android.ide.common.rendering.api.SessionParams;
 import com.android.ide.common.rendering.api.SessionParams.RenderingMode;
-import com.android.ide.common.rendering.api.StyleResourceValue;
 import com.android.ide.common.resources.ResourceRepository;
-import com.android.ide.common.resources.ResourceResolver;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.ide.common.resources.platform.AttrsXmlParser;
 import com.android.ide.common.resources.platform.DeclareStyleableInfo;
-import com.android.ide.common.sdk.LoadStatus;
-import com.android.ide.eclipse.adt.AdtPlugin;
-import com.android.ide.eclipse.adt.internal.editors.layout.ProjectCallback;
 import com.android.ide.eclipse.adt.internal.resources.manager.ProjectResources;
 import com.android.ide.eclipse.adt.internal.resources.manager.ResourceManager;
 import com.android.ide.eclipse.adt.internal.sdk.AndroidTargetData;
-import com.android.ide.eclipse.adt.internal.sdk.LayoutDevice.DeviceConfig;
 import com.android.ide.eclipse.adt.internal.sdk.Sdk;
-import com.android.layoutlib.api.ILayoutBridge;
 import com.android.resources.ResourceType;
+import com.android.resources.ScreenOrientation;
 import com.android.sdklib.IAndroidTarget;
 import com.android.sdklib.internal.avd.AvdInfo;
 
 import org.apache.commons.lang.StringUtils;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.FieldVisitor;
-import org.objectweb.asm.MethodAdapter;
-import org.objectweb.asm.MethodVisitor;
 
 import java.awt.image.BufferedImage;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Supports interacting with layoutlib.jar.
@@ -85,10 +91,23 @@ import java.util.Map;
 public final class AndroidBridge {
   private final LayoutLibrary m_layoutLib;
   private final IProject m_project;
-  private RenderSession m_renderSession;
+  private final RenderSessionManager m_sessionManager;
+  private final ImageConverter m_imageConverter = new ImageConverter();
+  private List<Rectangle> m_dirtyRegions;
   private final EditorContext m_context;
-  private AttrsXmlParser m_attrsSdkParser;
-  private AttrsXmlParser m_attrsProjectParser;
+  // log of sessions, used on rendering thread only
+  private final RenderDiagnostics m_log = new RenderDiagnostics();
+  // state of UI thread
+  private RenderDiagnostics m_diagnostics = new RenderDiagnostics();
+  private RenderResult m_result;
+  private boolean m_renderPending;
+  private boolean m_disposed;
+  private RenderResult m_defaults;
+  // delivered result of scheduled rendering, bound by next render() request
+  private Rendering m_rendering;
+  private Throwable m_renderFailure;
+  // image of session prepared by warm up, shown until first rendering
+  private BufferedImage m_standbyImage;
 
   ////////////////////////////////////////////////////////////////////////////
   //
@@ -99,6 +118,12 @@ public final class AndroidBridge {
     m_context = androidEditorContext;
     m_project = m_context.getJavaProject().getProject();
     m_layoutLib = getLayoutLibrary();
+    m_sessionManager = new RenderSessionManager(m_layoutLib);
+    Standby standby = WarmUpJob.takeStandby(m_project, m_layoutLib);
+    if (standby != null) {
+      m_sessionManager.adopt(standby.getSession());
+      m_standbyImage = standby.getSession().getImage();
+    }
   }
 
   ////////////////////////////////////////////////////////////////////////////
@@ -112,18 +137,44 @@ public final class AndroidBridge {
   private LayoutLibrary getLayoutLibrary() throws Exception {
     AndroidTargetData data = getTargetData();
     LayoutLibrary layoutLibrary = data.getLayoutLibrary();
-    return checkLegacy(data, layoutLibrary);
+    return LegacyBridgeSupport.install(data, layoutLibrary);
   }
 
   public void dispose() {
-    if (m_renderSession != null) {
-      m_renderSession.dispose();
-    }
+    m_disposed = true;
+    resetDiagnostics();
+    m_imageConverter.dispose();
+    // dispose on rendering thread, without waiting
+    Callable<Object> disposer = new Callable<Object>() {
+      public Object call() throws Exception {
+        m_sessionManager.dispose();
+        return null;
+      }
+    };
+    RenderScheduler.INSTANCE.submit(this, RenderScheduler.PRIORITY_BACKGROUND, disposer);
+  }
+
+  private void render(SessionParams params,
+      LayoutSnapshot snapshot,
+      String configurationKey,
+      boolean parseOnly) {
+    long start = System.nanoTime();
+    m_sessionManager.createSession(params, snapshot, configurationKey, !parseOnly);
+    m_log.addTiming(RenderDiagnostics.PHASE_SESSION, start);
+    checkResult();
   }
 
-  private void render(SessionParams params) {
-    m_renderSession = m_layoutLib.createSession(params);
-    Result result = m_renderSession.getResult();
+  /**
+   * Throws {@link DesignerException} if current session is not successful.
+   */
+  private void checkResult() {
+    checkResult(m_sessionManager.getSession().getResult());
+  }
+
+  /**
+   * Throws {@link DesignerException} if given {@link Result} is not successful.
+   */
+  static void checkResult(Result result) {
     if (!result.isSuccess()) {
       Throwable cause = result.getException();
       String errorMessage = result.getErrorMessage();
@@ -155,77 +206,376 @@ public final class AndroidBridge {
   }
   */
   /**
-   * 
+   * Renders the current layout without attributes and waits for result, so model can be built from
+   * View objects created by layoutlib.
    */
-  public void parse() {
-    ILayoutPullParser androidNativeParser =
-        new AndroidNativeParser(m_context.getRootElement(), true);
-    render(androidNativeParser);
+  public void parse() throws Exception {
+    final LayoutSnapshot snapshot = new LayoutSnapshot(m_context.getRootElement(), true);
+    final RenderDiagnostics diagnostics = new RenderDiagnostics();
+    final LegacyViews legacyViews = new LegacyViews();
+    RenderResult result = RenderScheduler.INSTANCE.run(this, new Callable<RenderResult>() {
+      public RenderResult call() throws Exception {
+        m_log.reset();
+        LegacyBridgeSupport.setCollector(legacyViews);
+        try {
+          render(snapshot, true);
+          return RenderResult.create(m_sessionManager.getSession());
+        } finally {
+          diagnostics.addAll(m_log);
+        }
+      }
+    });
+    bind(result, legacyViews, diagnostics);
   }
 
   /**
-   * 
+   * Requests rendering of the current layout. If only attribute values changed since last
+   * rendering, rendering thread tries to update existing session instead of inflating whole layout
+   * again.
+   * <p>
+   * State of {@link DocumentElement} tree is copied in this (UI) thread, so rendering thread does
+   * not access tree, even if it is changed while rendering. This method does not wait: when
+   * rendering is finished, given callback is invoked in UI thread and should refresh model, so this
+   * method is invoked again and binds delivered result. Results of renderings made obsolete by newer
+   * request are not delivered.
+   *
+   * @param withDefaults
+   *          if <code>true</code>, layout is also rendered without attributes in separate session,
+   *          so models without default values of properties can fetch them, see
+   *          {@link #acceptDefaults(AndroidHierarchyBuilder)}.
+   *
+   * @return <code>true</code> if delivered result was bound, or <code>false</code> if rendering was
+   *         scheduled, so result of previous rendering (if any) is still current.
+   */
+  public boolean render(final boolean withDefaults, final Runnable renderedCallback)
+      throws Exception {
+    // bind delivered result
+    if (m_renderFailure != null) {
+      Throwable failure = m_renderFailure;
+      m_renderFailure = null;
+      m_renderPending = false;
+      throw ReflectionUtils.propagate(failure);
+    }
+    if (m_rendering != null) {
+      bind(m_rendering.result, m_rendering.legacyViews, m_rendering.diagnostics);
+      m_defaults = m_rendering.defaults;
+      m_rendering = null;
+      m_renderPending = false;
+      return true;
+    }
+    // schedule new rendering
+    DocumentElement rootElement = m_context.getRootElement();
+    final LayoutSnapshot snapshot = new LayoutSnapshot(rootElement, false);
+    final LayoutSnapshot defaultsSnapshot =
+        withDefaults ? new LayoutSnapshot(rootElement, true) : null;
+    IFile file = m_context.getFile();
+    final String configurationKey =
+        getConfigurationKey(
+            getDisplayMetrics(),
+            DeviceManager.getOrientation(file),
+            DeviceManager.getThemeName(file));
+    Callable<Rendering> renderer = new Callable<Rendering>() {
+      public Rendering call() throws Exception {
+        m_log.reset();
+        RenderResult defaults = defaultsSnapshot != null ? renderDefaults(defaultsSnapshot) : null;
+        LegacyViews legacyViews = new LegacyViews();
+        RenderResult result = render0(snapshot, configurationKey, legacyViews);
+        RenderDiagnostics diagnostics = new RenderDiagnostics();
+        diagnostics.addAll(m_log);
+        return new Rendering(result, defaults, legacyViews, diagnostics);
+      }
+    };
+    IRenderCallback<Rendering> callback = new IRenderCallback<Rendering>() {
+      public void done(Rendering rendering) throws Exception {
+        deliver(rendering, null, renderedCallback);
+      }
+
+      public void failed(Throwable e) throws Exception {
+        deliver(null, e, renderedCallback);
+      }
+    };
+    RenderScheduler.INSTANCE.schedule(this, RenderScheduler.PRIORITY_VISIBLE, renderer, callback);
+    m_renderPending = true;
+    return false;
+  }
+
+  private RenderResult render0(LayoutSnapshot snapshot,
+      String configurationKey,
+      LegacyViews legacyViews) {
+    LegacyBridgeSupport.setCollector(legacyViews);
+    // render always, model needs View objects of live session, cached result has no them, so
+    // editor result is not put into RenderCache too, it is used by previews only
+    long start = System.nanoTime();
+    try {
+      boolean updated = m_sessionManager.update(snapshot, configurationKey);
+      m_log.addTiming(RenderDiagnostics.PHASE_UPDATE, start);
+      if (!updated) {
+        render(snapshot, false);
+      }
+      return RenderResult.create(m_sessionManager.getSession());
+    } finally {
+      AndroidMetrics.INSTANCE.renderFinished(start);
+    }
+  }
+
+  /**
+   * Renders given parse-only snapshot in separate session, which is disposed at once. Objects of
+   * result are used only to read default values of properties.
+   *
+   * @return the result with objects without attributes applied, or <code>null</code> if rendering
+   *         failed, so defaults are fetched from objects of usual rendering.
+   */
+  private RenderResult renderDefaults(LayoutSnapshot snapshot) {
+    long start = System.nanoTime();
+    // legacy API views are not collected, these objects are not bound to models
+    LegacyBridgeSupport.setCollector(null);
+    RenderSession session =
+        m_layoutLib.createSession(
+            createSessionParams(
+                snapshot.getParser(),
+                getDisplayMetrics(),
+                DeviceManager.getThemeName(m_context.getFile()),
+                getConfig(),
+                m_log));
+    AndroidMetrics.INSTANCE.sessionCreated();
+    try {
+      return session.getResult().isSuccess() ? RenderResult.create(session) : null;
+    } finally {
+      session.dispose();
+      AndroidMetrics.INSTANCE.sessionDisposed();
+      m_log.addTiming(RenderDiagnostics.PHASE_DEFAULTS, start);
+    }
+  }
+
+  /**
+   * Remembers finished rendering and invokes given callback, which should bind it using
+   * {@link #render(boolean, Runnable)}. Does nothing if this bridge is already disposed.
+   */
+  private void deliver(Rendering rendering, Throwable failure, Runnable renderedCallback) {
+    if (m_disposed) {
+      return;
+    }
+    m_rendering = rendering;
+    m_renderFailure = failure;
+    try {
+      renderedCallback.run();
+    } finally {
+      // not bound by callback, forget
+      m_rendering = null;
+      m_renderFailure = null;
+    }
+  }
+
+  /**
+   * Makes given result current, records timings of previous one.
+   */
+  private void bind(RenderResult result, LegacyViews legacyViews, RenderDiagnostics diagnostics) {
+    resetDiagnostics();
+    m_result = result;
+    m_legacyViews = legacyViews;
+    m_defaults = null;
+    m_diagnostics = diagnostics;
+  }
+
+  /**
+   * @return the key for {@link RenderCache}, which includes also edited file, target and
+   *         modification stamps of project.
    */
-  public void render() {
-    ILayoutPullParser androidNativeParser = new AndroidNativeParser(m_context.getRootElement());
-    render(androidNativeParser);
+  private String getCacheConfigurationKey(String configurationKey) {
+    return m_context.getFile().getFullPath()
+        + "/"
+        + getTarget().hashString()
+        + "/"
+        + ProjectChangesTracker.INSTANCE.getResourcesGeneration(m_project)
+        + "/"
+        + ProjectChangesTracker.INSTANCE.getCodeGeneration(m_project)
+        + "/"
+        + configurationKey;
   }
 
-  private void render(ILayoutPullParser androidNativeParser) {
+  /**
+   * @return the {@link DisplayMetrics} selected for edited file, with applied orientation.
+   */
+  private DisplayMetrics getDisplayMetrics() {
+    IFile file = m_context.getFile();
+    DisplayMetrics displayMetrics = DeviceManager.getMetrics(file, getAvds());
+    displayMetrics.useOrientation(DeviceManager.getOrientation(file));
+    return displayMetrics;
+  }
+
+  /**
+   * @return the key describing rendering configuration: device, orientation, theme.
+   */
+  private static String getConfigurationKey(DisplayMetrics displayMetrics,
+      ScreenOrientation orientation,
+      String themeName) {
+    return displayMetrics.getScreenWidth()
+        + "x"
+        + displayMetrics.getScreenHeight()
+        + "/"
+        + displayMetrics.getDensity()
+        + "/"
+        + displayMetrics.getXdpi()
+        + "x"
+        + displayMetrics.getYdpi()
+        + "/"
+        + orientation
+        + "/"
+        + themeName;
+  }
+
+  private void render(LayoutSnapshot snapshot, boolean parseOnly) {
+    DisplayMetrics displayMetrics = getDisplayMetrics();
+    String themeName = DeviceManager.getThemeName(m_context.getFile());
+    long start = System.nanoTime();
+    SessionParams params =
+        createSessionParams(snapshot.getParser(), displayMetrics, themeName, getConfig(), m_log);
+    m_log.addTiming(RenderDiagnostics.PHASE_PARAMS, start);
+    String configurationKey =
+        getConfigurationKey(
+            displayMetrics,
+            DeviceManager.getOrientation(m_context.getFile()),
+            themeName);
+    render(params, snapshot, configurationKey, parseOnly);
+  }
+
+  private SessionParams createSessionParams(ILayoutPullParser androidNativeParser,
+      DisplayMetrics displayMetrics,
+      String themeName,
+      FolderConfiguration config,
+      LayoutLog log) {
+    return createSessionParams(
+        m_project,
+        getTarget(),
+        getTargetData(),
+        m_layoutLib,
+        androidNativeParser,
+        displayMetrics,
+        themeName,
+        config,
+        log);
+  }
+
+  /**
+   * @return the {@link SessionParams} to render layout of given project, not bound to any editor.
+   */
+  public static SessionParams createSessionParams(IProject project,
+      IAndroidTarget target,
+      AndroidTargetData targetData,
+      LayoutLibrary layoutLib,
+      ILayoutPullParser androidNativeParser,
+      DisplayMetrics displayMetrics,
+      String themeName,
+      FolderConfiguration config,
+      LayoutLog log) {
     // TODO: use settings on design pane
     RenderingMode renderingMode = RenderingMode.NORMAL;
     Object projectKey = null;
-    int targetSdkVersion = getTarget().getVersion().getApiLevel();
+    int targetSdkVersion = target.getVersion().getApiLevel();
     int minSdkVersion = 5; // Android 2.0
-    DisplayMetrics displayMetrics = DeviceManager.getMetrics(m_context.getFile(), getAvds());
-    displayMetrics.useOrientation(DeviceManager.getOrientation(m_context.getFile()));
-    // prepare Log
-    LayoutLog log = new LayoutLog() {
-      @Override
-      public void error(String s, String s1, Object obj) {
-        System.err.println("Error: " + s + " " + s1);
-      }
-
-      @Override
-      public void error(String s, String s1, Throwable throwable1, Object obj) {
-        // TODO:
-        System.err.println("Error: " + s + " " + s1);
-        throwable1.printStackTrace();
-      }
-
-      @Override
-      public void fidelityWarning(String s, String s1, Throwable throwable1, Object obj) {
-        // TODO:
-        System.err.println("Warning: " + s + " " + s1);
-        throwable1.printStackTrace();
-      }
+    // prepare resources
+    ProjectResources projectRes = ResourceManager.getInstance().getProjectResources(project);
+    RenderResources renderResources =
+        ResourceResolverCache.INSTANCE.getResolver(
+            project,
+            target,
+            projectRes,
+            targetData.getFrameworkResources(),
+            config,
+            themeName);
+    IProjectCallback projectCallback =
+        ProjectCallbackCache.INSTANCE.getCallback(project, layoutLib, projectRes);
+    return new SessionParams(androidNativeParser,
+        renderingMode,
+        projectKey,
+        displayMetrics.getScreenWidth(),
+        displayMetrics.getScreenHeight(),
+        displayMetrics.getDensity(),
+        displayMetrics.getXdpi(),
+        displayMetrics.getYdpi(),
+        renderResources,
+        projectCallback,
+        minSdkVersion,
+        targetSdkVersion,
+        log);
+  }
 
-      @Override
-      public void warning(String s, String s1, Object obj) {
-        // TODO:
-        System.err.println("Warning: " + s + " " + s1);
+  /**
+   * Schedules rendering of the current layout using given {@link DisplayMetrics}, with current
+   * orientation and theme. Rendering is performed in its own {@link RenderSession}, so it doesn't
+   * affect the editor rendering. Result is put into {@link RenderCache}, it is used only by next
+   * preview of same layout and screen, editor always renders in its own session, even for
+   * previewed screen. Returned result has only image, because preview session is disposed after
+   * rendering.
+   *
+   * @param owner
+   *          the object identifying the request, new request with same owner cancels pending one.
+   * @param displayMetrics
+   *          the screen to render, it is not changed, current orientation is applied to copy.
+   */
+  public RenderTask<RenderResult> schedulePreview(Object owner,
+      DisplayMetrics screenMetrics,
+      IRenderCallback<RenderResult> callback) {
+    DocumentElement rootElement = m_context.getRootElement();
+    final LayoutSnapshot snapshot = new LayoutSnapshot(rootElement, false);
+    IFile file = m_context.getFile();
+    final ScreenOrientation orientation = DeviceManager.getOrientation(file);
+    final String themeName = DeviceManager.getThemeName(file);
+    final DisplayMetrics displayMetrics = DeviceManager.copyMetrics(screenMetrics);
+    displayMetrics.useOrientation(orientation);
+    String configurationKey = getConfigurationKey(displayMetrics, orientation, themeName);
+    final String cacheKey =
+        RenderCache.createKey(rootElement, getCacheConfigurationKey(configurationKey));
+    Callable<RenderResult> renderer = new Callable<RenderResult>() {
+      public RenderResult call() throws Exception {
+        return renderPreview(snapshot, displayMetrics, orientation, themeName, cacheKey);
       }
     };
-    // prepare resources
-    String themeName = DeviceManager.getThemeName(m_context.getFile());
-    RenderResources renderResources = createResourceResolver(getConfig(), themeName);
-    ProjectResources projectRes = getProjectResources();
-    IProjectCallback projectCallback = new ProjectCallback(m_layoutLib, projectRes, m_project);
-    SessionParams params =
-        new SessionParams(androidNativeParser,
-            renderingMode,
-            projectKey,
-            displayMetrics.getScreenWidth(),
-            displayMetrics.getScreenHeight(),
-            displayMetrics.getDensity(),
-            displayMetrics.getXdpi(),
-            displayMetrics.getYdpi(),
-            renderResources,
-            projectCallback,
-            minSdkVersion,
-            targetSdkVersion,
-            log);
-    render(params);
+    return RenderScheduler.INSTANCE.schedule(
+        owner,
+        RenderScheduler.PRIORITY_BACKGROUND,
+        renderer,
+        callback);
+  }
+
+  private RenderResult renderPreview(LayoutSnapshot snapshot,
+      DisplayMetrics displayMetrics,
+      ScreenOrientation orientation,
+      String themeName,
+      String cacheKey) throws Exception {
+    // try cached result
+    {
+      RenderResult cachedResult = RenderCache.INSTANCE.get(cacheKey, snapshot.getElements());
+      if (cachedResult != null) {
+        return cachedResult;
+      }
+    }
+    // render in separate session, result has image only, so legacy views are not needed
+    LegacyBridgeSupport.setCollector(null);
+    FolderConfiguration config =
+        ConfigurationSupport.createConfig(
+            displayMetrics,
+            orientation,
+            getTarget().getVersion().getApiLevel());
+    RenderSession session =
+        m_layoutLib.createSession(
+            createSessionParams(
+                snapshot.getParser(),
+                displayMetrics,
+                themeName,
+                config,
+                new RenderDiagnostics()));
+    AndroidMetrics.INSTANCE.sessionCreated();
+    try {
+      checkResult(session.getResult());
+      RenderResult result = RenderResult.create(session);
+      RenderCache.INSTANCE.put(cacheKey, snapshot.getElements(), result);
+      // session is disposed below, don't expose its View objects
+      return RenderResult.createImageOnly(result);
+    } finally {
+      session.dispose();
+      AndroidMetrics.INSTANCE.sessionDisposed();
+    }
   }
 
   ////////////////////////////////////////////////////////////////////////////
@@ -233,28 +583,16 @@ public final class AndroidBridge {
   // Resources
   //
   ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the {@link FolderConfiguration} for device, orientation and target of edited file.
+   */
   public FolderConfiguration getConfig() {
-    // TODO use settings on design pane
-    /*{
-      FolderConfiguration configuration = new FolderConfiguration();
-      configuration.createDefault();
-      configuration.setVersionQualifier(new VersionQualifier(bridge.getTarget().getVersion().getApiLevel()));
-      configuration.setPixelDensityQualifier(qualifier);
-      configuration.setScreenDimensionQualifier(qualifier);
-      configuration.setScreenOrientationQualifier(qualifier);
-      configuration.setScreenSizeQualifier(qualifier);
-    }*/
-    DeviceConfig deviceConfig =
-        getSdk().getLayoutDeviceManager().getCombinedList().get(0).getConfigs().get(0);
-    FolderConfiguration config = deviceConfig.getConfig();
-    return config;
-  }
-
-  private RenderResources createResourceResolver(FolderConfiguration config, String themeName) {
-    Map<ResourceType, Map<String, ResourceValue>> projectResources = getProjectResources(config);
-    Map<ResourceType, Map<String, ResourceValue>> frameworkResources =
-        getFrameworkResources(config);
-    return ResourceResolver.create(projectResources, frameworkResources, themeName, false);
+    IFile file = m_context.getFile();
+    return ConfigurationSupport.getConfig(
+        file,
+        getDisplayMetrics(),
+        DeviceManager.getOrientation(file),
+        getTarget().getVersion().getApiLevel());
   }
 
   private Map<ResourceType, Map<String, ResourceValue>> getProjectResources(FolderConfiguration config) {
@@ -264,9 +602,12 @@ public final class AndroidBridge {
   }
 
   private Map<ResourceType, Map<String, ResourceValue>> getFrameworkResources(FolderConfiguration config) {
-    // Get the framework resources
+    // Get the framework resources, shared by all editors
     ResourceRepository resources = getFrameworkResources();
-    return resources.getConfiguredResources(config);
+    return FrameworkResourcesCache.INSTANCE.getConfiguredResources(
+        getTarget(),
+        resources,
+        config);
   }
 
   /**
@@ -299,8 +640,7 @@ public final class AndroidBridge {
    * 
    */
   public List<String> getThemes() {
-    ArrayList<String> themes = Lists.newArrayList();
-    FolderConfiguration config = getConfig();
+    final FolderConfiguration config = getConfig();
     // First list any themes that are declared by the manifest
     /*{ NOTHING ACTUAL
       String defaultTheme = getDefaultTheme();
@@ -315,41 +655,30 @@ public final class AndroidBridge {
     }
       // TODO
     }*/
-    // get the themes from the project.
-    {
-      Map<ResourceType, Map<String, ResourceValue>> resources = getProjectResources(config);
-      if (resources != null) {
-        // get the styles.
-        Map<String, ResourceValue> styles = resources.get(ResourceType.STYLE);
-        if (styles != null) {
-          // collect the themes out of all the styles, ie styles that extend,
-          // directly or indirectly a platform theme.
-          for (ResourceValue value : styles.values()) {
-            if (isTheme(value, styles)) {
-              themes.add(value.getName());
-            }
-          }
-        }
-      }
-    }
-    // get the themes from the Framework.
-    {
-      Map<ResourceType, Map<String, ResourceValue>> resources = getFrameworkResources(config);
-      if (resources != null) {
-        // get the styles.
-        Map<String, ResourceValue> styles = resources.get(ResourceType.STYLE);
-        // collect the themes out of all the styles.
-        for (ResourceValue value : styles.values()) {
-          String name = value.getName();
-          if (name.startsWith("Theme.") || name.equals("Theme")) {
-            themes.add(value.getName());
-          }
-        }
+    // project and framework themes are indexed, styles are requested only if changed
+    return ExecutionUtils.runObject(new RunnableObjectEx<List<String>>() {
+      public List<String> runObject() throws Exception {
+        return ThemeIndex.INSTANCE.getThemes(
+            m_project,
+            getTarget(),
+            config,
+            new RunnableObjectEx<Map<String, ResourceValue>>() {
+              public Map<String, ResourceValue> runObject() throws Exception {
+                return getStyles(getProjectResources(config));
+              }
+            },
+            new RunnableObjectEx<Map<String, ResourceValue>>() {
+              public Map<String, ResourceValue> runObject() throws Exception {
+                return getStyles(getFrameworkResources(config));
+              }
+            });
       }
-    }
-    // sort themes
-    Collections.sort(themes);
-    return themes;
+    });
+  }
+
+  private static Map<String, ResourceValue> getStyles(
+      Map<ResourceType, Map<String, ResourceValue>> resources) {
+    return resources != null ? resources.get(ResourceType.STYLE) : null;
   }
 
   /*private String getDefaultTheme() {
@@ -370,59 +699,6 @@ public final class AndroidBridge {
       return defaultTheme;
     return null;
   }*/
-  /**
-   * Returns whether the given <var>style</var> is a theme. This is done by making sure the parent
-   * is a theme.
-   * 
-   * See {@link
-   * com.android.ide.eclipse.adt.internal.editors.layout.configuration.ConfigurationComposite#
-   * isTheme(ResourceValue, Map<String, ResourceValue>)}
-   * 
-   * @param value
-   *          the style to check
-   * @param styleMap
-   *          the map of styles for the current project. Key is the style name.
-   * @return True if the given <var>style</var> is a theme.
-   */
-  private boolean isTheme(ResourceValue value, Map<String, ResourceValue> styleMap) {
-    String ANDROID_NS_NAME_PREFIX = "android:";
-    String name = value.getName();
-    if (value instanceof StyleResourceValue) {
-      StyleResourceValue style = (StyleResourceValue) value;
-      boolean frameworkStyle = false;
-      String parentStyle = style.getParentStyle();
-      if (parentStyle == null) {
-        // if there is no specified parent style we look an implied one.
-        // For instance 'Theme.light' is implied child style of 'Theme',
-        // and 'Theme.light.fullscreen' is implied child style of 'Theme.light'
-        int index = name.lastIndexOf('.');
-        if (index != -1) {
-          parentStyle = name.substring(0, index);
-        }
-      } else {
-        // remove the useless @ if it's there
-        parentStyle = StringUtils.removeStart(parentStyle, "@");
-        // check for framework identifier.
-        if (parentStyle.startsWith(ANDROID_NS_NAME_PREFIX)) {
-          frameworkStyle = true;
-          parentStyle = parentStyle.substring(ANDROID_NS_NAME_PREFIX.length());
-        }
-        // at this point we could have the format style/<name>. we want only the name
-        if (parentStyle.startsWith("style/")) {
-          parentStyle = parentStyle.substring("style/".length());
-        }
-      }
-      if (parentStyle != null && !frameworkStyle) {
-        // if it's a project style, we check this is a theme.
-        value = styleMap.get(parentStyle);
-        if (value != null) {
-          return isTheme(value, styleMap);
-        }
-      }
-    }
-    return name.startsWith("Theme.") || name.equals("Theme");
-  }
-
   ////////////////////////////////////////////////////////////////////////////
   //
   // Objects
@@ -432,10 +708,16 @@ public final class AndroidBridge {
    * @param androidViewInfoVisitor
    */
   public void accept(AndroidHierarchyBuilder visitor) throws Exception {
-    checkSession();
-    List<com.android.ide.common.rendering.api.ViewInfo> views = m_renderSession.getRootViews();
+    if (m_result == null) {
+      // nothing rendered yet
+      return;
+    }
+    long start = System.nanoTime();
+    List<com.android.ide.common.rendering.api.ViewInfo> views = m_result.getRootViews();
     accept(visitor, views.get(0), null);
-    m_legacyViewsCollection.clear();
+    // views are bound to models, don't keep them
+    m_legacyViews = null;
+    m_diagnostics.addTiming(RenderDiagnostics.PHASE_HIERARCHY, start);
   }
 
   /**
@@ -449,7 +731,7 @@ public final class AndroidBridge {
     if (viewInfo.getViewObject() == null) {
       // maybe it's legacy API?
       Object key = viewInfo.getCookie();
-      Object view = m_legacyViewsCollection.get(key);
+      Object view = m_legacyViews != null ? m_legacyViews.views.get(key) : null;
       if (view != null) {
         ReflectionUtils.setField(viewInfo, "mViewObject", view);
       }
@@ -461,12 +743,93 @@ public final class AndroidBridge {
   }
 
   /**
-   * @return the image of the current rendering.
+   * Visits objects rendered without attributes for last bound rendering, see
+   * {@link #render(boolean, Runnable)}. These objects are visited only once, then forgotten.
+   */
+  public void acceptDefaults(AndroidHierarchyBuilder visitor) throws Exception {
+    RenderResult defaults = m_defaults;
+    m_defaults = null;
+    if (defaults != null) {
+      acceptDefaults(visitor, defaults.getRootViews().get(0), null);
+    }
+  }
+
+  private static void acceptDefaults(AndroidHierarchyBuilder visitor,
+      com.android.ide.common.rendering.api.ViewInfo viewInfo,
+      ObjectInfo parentModel) throws Exception {
+    ObjectInfo objectInfo = visitor.visit(viewInfo, parentModel);
+    for (com.android.ide.common.rendering.api.ViewInfo view : viewInfo.getChildren()) {
+      acceptDefaults(visitor, view, objectInfo);
+    }
+  }
+
+  /**
+   * @return the image of the current rendering. While rendering is pending, image of session may be
+   *         changed by rendering thread, so previous image is returned, or blank one if there is no
+   *         previous image yet.
    */
   public Image getImage() {
-    checkSession();
-    BufferedImage image = m_renderSession.getImage();
-    return ImageUtils.convertToSWT(image);
+    if (m_renderPending || m_result == null) {
+      m_dirtyRegions = null;
+      Image image = m_imageConverter.getLastImage();
+      return image != null ? image : createBlankImage();
+    }
+    long start = System.nanoTime();
+    BufferedImage image = m_result.getImage();
+    Image swtImage = m_imageConverter.convert(image);
+    m_dirtyRegions = m_imageConverter.getChangedRegions();
+    m_standbyImage = null;
+    m_diagnostics.addTiming(RenderDiagnostics.PHASE_IMAGE, start);
+    return swtImage;
+  }
+
+  /**
+   * @return the image of warm up session if it has size of current device screen, or white
+   *         {@link Image} of this size.
+   */
+  private Image createBlankImage() {
+    DisplayMetrics displayMetrics = getDisplayMetrics();
+    if (m_standbyImage != null
+        && m_standbyImage.getWidth() == displayMetrics.getScreenWidth()
+        && m_standbyImage.getHeight() == displayMetrics.getScreenHeight()) {
+      return m_imageConverter.convert(m_standbyImage);
+    }
+    Display display = DesignerPlugin.getStandardDisplay();
+    Image image =
+        new Image(display, displayMetrics.getScreenWidth(), displayMetrics.getScreenHeight());
+    GC gc = new GC(image);
+    try {
+      gc.setBackground(display.getSystemColor(SWT.COLOR_WHITE));
+      gc.fillRectangle(image.getBounds());
+    } finally {
+      gc.dispose();
+    }
+    return image;
+  }
+
+  /**
+   * Records phase timings of current rendering, including fetching of objects and image, into
+   * {@link AndroidMetrics} and forgets collected diagnostics.
+   */
+  private void resetDiagnostics() {
+    AndroidMetrics.INSTANCE.renderPhasesFinished(m_diagnostics.getTimings());
+    m_diagnostics.reset();
+  }
+
+  /**
+   * @return the {@link RenderDiagnostics} with layoutlib messages and phase timings of the last
+   *         rendering.
+   */
+  public RenderDiagnostics getDiagnostics() {
+    return m_diagnostics;
+  }
+
+  /**
+   * @return the areas of image changed since previous {@link #getImage()}, or <code>null</code> if
+   *         whole image should be repainted.
+   */
+  public List<Rectangle> getDirtyRegions() {
+    return m_dirtyRegions;
   }
 
   ////////////////////////////////////////////////////////////////////////////
@@ -479,87 +842,35 @@ public final class AndroidBridge {
   }
 
   public static Sdk getSdk() {
-    waitLoad(new RunnableObjectEx<LoadStatus>() {
-      public LoadStatus runObject() throws Exception {
-        return AdtPlugin.getDefault().getSdkLoadStatus();
-      }
-    });
-    return Sdk.getCurrent();
+    return SdkLoadSupport.getSdk();
   }
 
   public IAndroidTarget getTarget() {
     return getSdk().getTarget(m_project);
   }
 
+  /**
+   * @return the {@link AndroidTargetData} of project target, waits for it to load.
+   */
   public AndroidTargetData getTargetData() {
-    final Sdk currentSdk = getSdk();
-    final IAndroidTarget target = getTarget();
-    if (target == null) {
-      // TODO: throw DesEx
-      throw new RuntimeException("no target");
-    }
-    // get real target data
-    AndroidTargetData dataLoading = currentSdk.getTargetData(target);
-    if (dataLoading == null) {
-      // not yet loaded
-      waitLoad(new RunnableObjectEx<LoadStatus>() {
-        public LoadStatus runObject() throws Exception {
-          return currentSdk.checkAndLoadTargetData(target, null);
-        }
-      });
-    }
-    // should be loaded here
-    final AndroidTargetData data = currentSdk.getTargetData(target);
-    waitLoad(new RunnableObjectEx<LoadStatus>() {
-      public LoadStatus runObject() throws Exception {
-        return data.getLayoutLibrary().getStatus();
-      }
-    });
-    return data;
+    return SdkLoadSupport.getTargetData(m_project);
   }
 
   /**
    * @return the attribute parser for Sdk attributes.
    */
   private AttrsXmlParser getAttrsSdkParser() {
-    if (m_attrsSdkParser == null) {
-      // FIXME: re-create on target change
-      String path = getSdkAttributesPath();
-      m_attrsSdkParser = new AttrsXmlParser(path, AdtPlugin.getDefault());
-      m_attrsSdkParser.preload();
-    }
-    return m_attrsSdkParser;
-  }
-
-  /**
-   * @return the attribute parser for project-defined attributes.
-   */
-  private AttrsXmlParser getAttrsProjectParser() {
-    if (m_attrsProjectParser == null) {
-      IFile attrsFile = m_project.getFile("res/values/attrs.xml");
-      if (!attrsFile.isAccessible()) {
-        return null;
-      }
-      String path = attrsFile.getLocation().toOSString();
-      m_attrsProjectParser = new AttrsXmlParser(path, AdtPlugin.getDefault());
-      m_attrsProjectParser.preload();
-    }
-    return m_attrsProjectParser;
+    return AttrsParserCache.INSTANCE.getParser(getSdkAttributesPath());
   }
 
   /**
    * @return the attributes description for given class.
    */
   public DeclareStyleableInfo getStyleable(Class<?> componentClass, String key) {
-    boolean frameworkClass = AndroidUtils.isFrameworkClass(componentClass);
-    // get parser
-    AttrsXmlParser parser = frameworkClass ? getAttrsSdkParser() : getAttrsProjectParser();
-    if (parser == null) {
-      // possibly no attrs.xml
-      return null;
+    if (!AndroidUtils.isFrameworkClass(componentClass)) {
+      return ProjectAttributesIndex.INSTANCE.getStyleable(m_project, key);
     }
-    Map<String, DeclareStyleableInfo> styleableList = parser.getDeclareStyleableList();
-    return styleableList.get(key);
+    return getAttrsSdkParser().getDeclareStyleableList().get(key);
   }
 
   /**
@@ -567,12 +878,10 @@ public final class AndroidBridge {
    */
   public Map<String, Integer> getEnumFlagValues(Class<?> componentClass, String attrLocalName) {
     if (!AndroidUtils.isFrameworkClass(componentClass)) {
-      AttrsXmlParser parser = getAttrsProjectParser();
-      if (parser != null) {
-        Map<String, Integer> map = parser.getEnumFlagValues().get(attrLocalName);
-        if (map != null) {
-          return map;
-        }
+      Map<String, Integer> map =
+          ProjectAttributesIndex.INSTANCE.getEnumFlagValues(m_project, attrLocalName);
+      if (map != null) {
+        return map;
       }
     }
     AttrsXmlParser parser = getAttrsSdkParser();
@@ -586,237 +895,79 @@ public final class AndroidBridge {
     return getTarget().getPath(IAndroidTarget.ATTRIBUTES);
   }
 
-  public List<AvdInfo> getAvds() {
-    // TODO filter
-    AvdInfo[] avds = getSdk().getAvdManager().getValidAvds();
-    return Lists.newArrayList(avds);
-  }
-
-  ////////////////////////////////////////////////////////////////////////////
-  //
-  // Utils/Misc
-  //
-  ////////////////////////////////////////////////////////////////////////////
   /**
-   * Checks for LoadStatus == LOADED provided by <code>loadStatusGetter</code>. If the status is
-   * FAILED or timeout exceeded, throws the exception.
-   * 
-   * // FIXME: use better way waiting for sdk to load.
+   * Classes are loaded by class loader of layoutlib, so they are same as classes of View objects
+   * created by rendering.
+   *
+   * @return the framework View {@link Class} for given layout tag, loaded without initialization,
+   *         or <code>null</code> if tag is not a framework View.
    */
-  private static void waitLoad(RunnableObjectEx<LoadStatus> loadStatusGetter) {
-    boolean error = false;
-    try {
-      long timeout = 2 * 60 * 1000;
-      long startWait = System.currentTimeMillis();
-      LoadStatus status;
-      while ((status = loadStatusGetter.runObject()) == LoadStatus.LOADING) {
-        ExecutionUtils.sleep(10);
-        if (System.currentTimeMillis() - startWait > timeout) {
-          status = LoadStatus.FAILED;
-          break;
-        }
-      }
-      if (status == LoadStatus.FAILED) {
-        error = true;
-      }
-    } catch (Throwable e) {
-      // shouldn't happen, but spit anyway
-      ReflectionUtils.propagate(e);
+  public Class<?> getFrameworkViewClass(String tag) throws Exception {
+    ClassLoader classLoader =
+        (ClassLoader) ReflectionUtils.getFieldObject(m_layoutLib, "mClassLoader");
+    if (classLoader == null) {
+      return null;
     }
-    if (error) {
-      // TODO: use DesEx
-      throw new RuntimeException("load failed");
+    for (String className : AndroidTagResolver.getClassNames(tag)) {
+      try {
+        Class<?> viewClass = Class.forName(className, false, classLoader);
+        return AndroidUtils.isFrameworkClass(viewClass) ? viewClass : null;
+      } catch (ClassNotFoundException e) {
+        // try next package
+      }
     }
+    return null;
   }
 
-  private void checkSession() {
-    if (m_renderSession == null || !m_renderSession.getResult().isSuccess()) {
-      throw new DesignerException(IExceptionConstants.INVALID_BRIDGE_STATE);
-    }
+  public List<AvdInfo> getAvds() {
+    // TODO filter
+    AvdInfo[] avds = getSdk().getAvdManager().getValidAvds();
+    return Lists.newArrayList(avds);
   }
 
   ////////////////////////////////////////////////////////////////////////////
   //
-  // Legacy API support
+  // Rendering
   //
   ////////////////////////////////////////////////////////////////////////////
-  private final Map<Object, Object> m_legacyViewsCollection = Maps.newHashMap();
-
   /**
-   * Checks for legacy API and rewrites legacy bridge to be able to collect View instances.
+   * Result of scheduled rendering, delivered to UI thread.
    */
-  private LayoutLibrary checkLegacy(AndroidTargetData data, LayoutLibrary layoutLibrary)
-      throws Exception {
-    if (ReflectionUtils.getFieldObject(layoutLibrary, "mBridge") != null) {
-      // do nothing, modern api
-      return layoutLibrary;
+  private static final class Rendering {
+    private final RenderResult result;
+    private final RenderResult defaults;
+    private final LegacyViews legacyViews;
+    private final RenderDiagnostics diagnostics;
+
+    private Rendering(RenderResult result,
+        RenderResult defaults,
+        LegacyViews legacyViews,
+        RenderDiagnostics diagnostics) {
+      this.result = result;
+      this.defaults = defaults;
+      this.legacyViews = legacyViews;
+      this.diagnostics = diagnostics;
     }
-    // create new bridge using rewriting class loader
-    Object legacyBridge = ReflectionUtils.getFieldObject(layoutLibrary, "mLegacyBridge");
-    URLClassLoader legacyClassLoader = (URLClassLoader) legacyBridge.getClass().getClassLoader();
-    URLClassLoader newClassLoader =
-        new LegacyBridgeClassLoader(legacyClassLoader.getURLs(),
-            AndroidBridge.class.getClassLoader());
-    // create new
-    Class<?> legacyClass = newClassLoader.loadClass(LayoutLibrary.CLASS_BRIDGE);
-    ILayoutBridge newLegacyBridge = (ILayoutBridge) legacyClass.newInstance();
-    // re-init
-    IAndroidTarget target = (IAndroidTarget) ReflectionUtils.getFieldObject(data, "mTarget");
-    String fontPath = target.getPath(IAndroidTarget.FONTS);
-    newLegacyBridge.init(fontPath, data.getEnumValueMap());
-    // store
-    ReflectionUtils.setField(layoutLibrary, "mLegacyBridge", newLegacyBridge);
-    ReflectionUtils.setField(layoutLibrary, "mClassLoader", newClassLoader);
-    // setup collector
-    ReflectionUtils.setField(newLegacyBridge, "collector", new IViewsCollector() {
-      public void collect(Object view, Object key) {
-        if (view != null) {
-          m_legacyViewsCollection.put(key, view);
-        }
-      }
-    });
-    return layoutLibrary;
   }
 
   ////////////////////////////////////////////////////////////////////////////
   //
-  // Inner classes
+  // Legacy API support
   //
   ////////////////////////////////////////////////////////////////////////////
+  // views collected by rendering of bound result, used on UI thread
+  private LegacyViews m_legacyViews;
+
   /**
-   * Rewriting class loader which hooks 'visit()' method in legacy bridge and invokes collector for
-   * View objects.
+   * View objects collected by legacy bridge during one rendering. Each rendering fills its own
+   * instance on rendering thread, which is passed to UI thread with result.
    */
-  private static final class LegacyBridgeClassLoader extends URLClassLoader {
-    private static final String VIEWS_COLLECTOR_NAME =
-        "com/android/ide/eclipse/designer/internal/support/IViewsCollector";
+  private static final class LegacyViews implements IViewsCollector {
+    private final Map<Object, Object> views = Maps.newHashMap();
 
-    ////////////////////////////////////////////////////////////////////////////
-    //
-    // Constructor
-    //
-    ////////////////////////////////////////////////////////////////////////////
-    private LegacyBridgeClassLoader(URL[] urls, ClassLoader parent) {
-      super(urls, parent);
-    }
-
-    ////////////////////////////////////////////////////////////////////////////
-    //
-    // ClassLoader
-    //
-    ////////////////////////////////////////////////////////////////////////////
-    @Override
-    protected Class<?> findClass(String className) throws ClassNotFoundException {
-      if (LayoutLibrary.CLASS_BRIDGE.equals(className)) {
-        String classResourceName = className.replace('.', '/') + ".class";
-        InputStream input = getResourceAsStream(classResourceName);
-        if (input == null) {
-          throw new ClassNotFoundException(className);
-        } else {
-          try {
-            // read class bytes
-            byte[] bytes = IOUtils2.readBytes(input);
-            ClassReader classReader = new ClassReader(bytes);
-            // rewrite
-            ToBytesClassAdapter rewriter = new ToBytesClassAdapter() {
-              private boolean isFieldPresent;
-
-              @Override
-              public FieldVisitor visitField(int access,
-                  String name,
-                  String desc,
-                  String signature,
-                  Object value) {
-                if (name.equals("collector")) {
-                  isFieldPresent = true;
-                }
-                return cv.visitField(access, name, desc, signature, value);
-              }
-
-              @Override
-              public void visitEnd() {
-                if (!isFieldPresent) {
-                  // inject 'collector' field
-                  FieldVisitor fv =
-                      cv.visitField(0, "collector", "L" + VIEWS_COLLECTOR_NAME + ";", null, null);
-                  if (fv != null) {
-                    fv.visitEnd();
-                  }
-                }
-                cv.visitEnd();
-              }
-
-              @Override
-              public MethodVisitor visitMethod(int access,
-                  String name,
-                  String desc,
-                  String signature,
-                  String[] exceptions) {
-                if ("visit".equals(name)) {
-                  MethodVisitor mv = cv.visitMethod(access, name, desc, signature, exceptions);
-                  return new MethodAdapter(mv) {
-                    private boolean beforeRetNull;
-
-                    @Override
-                    public void visitInsn(int opcode) {
-                      // invoke 'collector.collect()' just before normal return
-                      if (opcode >= IRETURN && opcode <= RETURN || opcode == ATHROW) {
-                        if (beforeRetNull) {
-                          // this is 'return null' code, do nothing
-                          beforeRetNull = false;
-                        } else {
-                          // 'collector.collect(view, bridgecontext.getViewKey(view));'
-                          mv.visitVarInsn(ALOAD, 0);
-                          mv.visitFieldInsn(
-                              GETFIELD,
-                              "com/android/layoutlib/bridge/Bridge",
-                              "collector",
-                              "L" + VIEWS_COLLECTOR_NAME + ";");
-                          mv.visitVarInsn(ALOAD, 1);
-                          mv.visitVarInsn(ALOAD, 2);
-                          mv.visitVarInsn(ALOAD, 1);
-                          mv.visitMethodInsn(
-                              INVOKEVIRTUAL,
-                              "com/android/layoutlib/bridge/BridgeContext",
-                              "getViewKey",
-                              "(Landroid/view/View;)Ljava/lang/Object;");
-                          mv.visitMethodInsn(
-                              INVOKEINTERFACE,
-                              VIEWS_COLLECTOR_NAME,
-                              "collect",
-                              "(Ljava/lang/Object;Ljava/lang/Object;)V");
-                        }
-                      } else if (opcode == ACONST_NULL) {
-                        // skip injecting before 'return null'
-                        beforeRetNull = true;
-                      }
-                      mv.visitInsn(opcode);
-                    };
-                  };
-                } else {
-                  return super.visitMethod(access, name, desc, signature, exceptions);
-                }
-              }
-            };
-            // do rewriting
-            classReader.accept(rewriter, 0);
-            bytes = rewriter.toByteArray();
-            // define package
-            {
-              String pkgName = StringUtils.substringBeforeLast(className, ".");
-              if (getPackage(pkgName) == null) {
-                definePackage(pkgName, null, null, null, null, null, null, null);
-              }
-            }
-            // return modified class
-            return defineClass(className, bytes, 0, bytes.length);
-          } catch (Throwable e) {
-            throw new ClassNotFoundException("Error loading class " + className, e);
-          }
-        }
-      } else {
-        // other classes
-        return super.findClass(className);
+    public void collect(Object view, Object key) {
+      if (view != null) {
+        views.put(key, view);
       }
     }
   }
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.wb.android.internal.support;
 
+import com.google.common.collect.Lists;
+
 import org.eclipse.wb.internal.core.utils.reflect.ReflectionUtils;
 import org.eclipse.wb.internal.core.utils.xml.parser.QAttribute;
 import org.eclipse.wb.internal.core.utils.xml.parser.QHandlerAdapter;
@@ -17,7 +19,9 @@ import org.eclipse.wb.internal.core.utils.xml.parser.QParser;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
 
+import com.android.ide.eclipse.adt.AdtConstants;
 import com.android.ide.eclipse.adt.internal.project.ProjectHelper;
 import com.android.sdklib.SdkConstants;
 
@@ -123,6 +127,23 @@ public final class AndroidUtils {
     return ReflectionUtils.isSuccessorOf(componentClass, "android.view.ViewGroup$LayoutParams");
   }
 
+  /**
+   * @return the open projects in workspace which have Android nature.
+   */
+  public static List<IProject> getOpenAndroidProjects() {
+    List<IProject> projects = Lists.newArrayList();
+    for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+      try {
+        if (project.isOpen() && project.hasNature(AdtConstants.NATURE_DEFAULT)) {
+          projects.add(project);
+        }
+      } catch (Throwable e) {
+        // ignore, project is not available
+      }
+    }
+    return projects;
+  }
+
   /**
    * @return <code>true</code> if given class is the framework class, i.e. package starts with
    *         'android'.
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Lists;
+
+import org.eclipse.wb.android.internal.support.DeviceManager.DisplayMetrics;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+
+import com.android.resources.ScreenOrientation;
+import com.android.sdklib.internal.avd.AvdInfo;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Headless application which renders all layouts of project using {@link BatchRenderer}.
+ * <p>
+ * Arguments:
+ * <ul>
+ * <li><code>-project &lt;name&gt;</code> - name of Android project in workspace, required;</li>
+ * <li><code>-output &lt;path&gt;</code> - folder for images and bounds, required;</li>
+ * <li><code>-devices &lt;names&gt;</code> - comma separated names of devices (xVGA or AVD), by
+ * default "default";</li>
+ * <li><code>-orientations &lt;names&gt;</code> - comma separated "portrait" and/or "landscape", by
+ * default "portrait";</li>
+ * <li><code>-themes &lt;names&gt;</code> - comma separated names of themes, by default "Theme";</li>
+ * <li><code>-threads &lt;count&gt;</code> - number of layouts processed at same time, by default
+ * number of processors.</li>
+ * </ul>
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class BatchRenderApplication implements IApplication {
+  private static final Integer EXIT_FAILED = Integer.valueOf(1);
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // IApplication
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public Object start(IApplicationContext context) throws Exception {
+    String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+    String projectName = getArgument(args, "-project", null);
+    String outputPath = getArgument(args, "-output", null);
+    if (projectName == null || outputPath == null) {
+      System.err.println("Usage: -project <name> -output <path> [-devices <names>]"
+          + " [-orientations <names>] [-themes <names>] [-threads <count>]");
+      return EXIT_FAILED;
+    }
+    IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
+    if (!project.isOpen()) {
+      System.err.println("Project " + projectName + " does not exist or is closed.");
+      return EXIT_FAILED;
+    }
+    int threads =
+        Integer.parseInt(getArgument(
+            args,
+            "-threads",
+            Integer.toString(Runtime.getRuntime().availableProcessors())));
+    BatchRenderer renderer = new BatchRenderer(project, new File(outputPath), threads);
+    // prepare configurations
+    List<AvdInfo> avds = Lists.newArrayList(AndroidBridge.getSdk().getAvdManager().getValidAvds());
+    for (String device : StringUtils.split(getArgument(args, "-devices", "default"), ',')) {
+      for (String orientation : StringUtils.split(
+          getArgument(args, "-orientations", "portrait"),
+          ',')) {
+        for (String theme : StringUtils.split(getArgument(args, "-themes", "Theme"), ',')) {
+          DisplayMetrics metrics = getMetrics(device.trim(), avds);
+          if (metrics == null) {
+            System.err.println("Unknown device: " + device);
+            return EXIT_FAILED;
+          }
+          renderer.addConfiguration(
+              metrics,
+              ScreenOrientation.valueOf(orientation.trim().toUpperCase()),
+              theme.trim());
+        }
+      }
+    }
+    // render
+    List<String> failures = renderer.render(new NullProgressMonitor());
+    for (String failure : failures) {
+      System.err.println(failure);
+    }
+    return failures.isEmpty() ? EXIT_OK : EXIT_FAILED;
+  }
+
+  public void stop() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Utils
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the value following given option, or default value if no such option.
+   */
+  private static String getArgument(String[] args, String name, String defaultValue) {
+    if (args != null) {
+      for (int i = 0; i < args.length - 1; i++) {
+        if (name.equals(args[i])) {
+          return args[i + 1];
+        }
+      }
+    }
+    return defaultValue;
+  }
+
+  /**
+   * @return the new {@link DisplayMetrics} with given name, or <code>null</code> if not found.
+   */
+  private static DisplayMetrics getMetrics(String name, List<AvdInfo> avds) {
+    DisplayMetrics defaultMetrics = DeviceManager.getMetricsDefault();
+    if (defaultMetrics.getPrompt().equalsIgnoreCase(name)) {
+      return defaultMetrics;
+    }
+    for (DisplayMetrics metrics : DeviceManager.getAllMetrics(avds)) {
+      if (metrics.getPrompt().equalsIgnoreCase(name)) {
+        return metrics;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Lists;
+
+import org.eclipse.wb.android.internal.AndroidMetrics;
+import org.eclipse.wb.android.internal.parser.AndroidNativeParser;
+import org.eclipse.wb.android.internal.support.DeviceManager.DisplayMetrics;
+import org.eclipse.wb.android.internal.support.render.RenderDiagnostics;
+import org.eclipse.wb.android.internal.support.render.RenderResult;
+import org.eclipse.wb.android.internal.support.render.RenderScheduler;
+import org.eclipse.wb.android.internal.support.render.RenderScheduler.RenderTask;
+import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
+import org.eclipse.wb.internal.core.utils.xml.FileDocumentEditContext;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import com.android.ide.common.rendering.LayoutLibrary;
+import com.android.ide.common.rendering.api.RenderSession;
+import com.android.ide.common.rendering.api.SessionParams;
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.ide.eclipse.adt.internal.sdk.AndroidTargetData;
+import com.android.resources.ScreenOrientation;
+import com.android.sdklib.IAndroidTarget;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders all layouts of project for set of configurations (device, orientation, theme), without
+ * editor. For each layout and configuration writes PNG image and JSON tree of view bounds.
+ * <p>
+ * Layouts are processed on bounded pool of threads: reading of layout, encoding of image and
+ * writing of files are parallel. Layoutlib itself allows only one rendering at a time, so each
+ * layout is rendered in its own session on {@link RenderScheduler} thread.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class BatchRenderer {
+  private final IProject m_project;
+  private final File m_outputFolder;
+  private final int m_threads;
+  private final List<Configuration> m_configurations = Lists.newArrayList();
+  private final List<RenderTask<?>> m_renderTasks = Lists.newArrayList();
+  private boolean m_stopped;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @param threads
+   *          the maximum number of layouts processed at same time.
+   */
+  public BatchRenderer(IProject project, File outputFolder, int threads) {
+    m_project = project;
+    m_outputFolder = outputFolder;
+    m_threads = Math.max(threads, 1);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Configurations
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Adds configuration to render each layout with. Given {@link DisplayMetrics} should not be
+   * shared with other configurations.
+   */
+  public void addConfiguration(DisplayMetrics metrics,
+      ScreenOrientation orientation,
+      String themeName) {
+    metrics.useOrientation(orientation);
+    m_configurations.add(new Configuration(metrics, orientation, themeName));
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Rendering
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Renders all "res/layout*&#47;*.xml" files of project with all configurations.
+   *
+   * @return the descriptions of failed layouts, empty if all layouts rendered.
+   */
+  public List<String> render(IProgressMonitor monitor) throws Exception {
+    AndroidTargetData data = SdkLoadSupport.getTargetData(m_project);
+    IAndroidTarget target = AndroidBridge.getSdk().getTarget(m_project);
+    LayoutLibrary layoutLib = LegacyBridgeSupport.install(data, data.getLayoutLibrary());
+    // prepare tasks
+    List<LayoutTask> tasks = Lists.newArrayList();
+    for (IFile file : getLayoutFiles()) {
+      for (Configuration configuration : m_configurations) {
+        tasks.add(new LayoutTask(file, configuration, target, data, layoutLib));
+      }
+    }
+    // process
+    List<String> failures = Lists.newArrayList();
+    monitor.beginTask("Rendering layouts of " + m_project.getName(), tasks.size());
+    synchronized (m_renderTasks) {
+      m_stopped = false;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(m_threads);
+    try {
+      List<Future<Object>> futures = Lists.newArrayList();
+      for (LayoutTask task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      for (int i = 0; i < tasks.size(); i++) {
+        if (monitor.isCanceled()) {
+          throw new OperationCanceledException();
+        }
+        LayoutTask task = tasks.get(i);
+        monitor.subTask(task.getName());
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException e) {
+          failures.add(task.getName() + ": " + e.getCause());
+        }
+        monitor.worked(1);
+      }
+    } finally {
+      executor.shutdownNow();
+      cancelRenderTasks();
+      monitor.done();
+    }
+    return failures;
+  }
+
+  /**
+   * Cancels renderings which are still queued in {@link RenderScheduler}, because interrupting of
+   * {@link LayoutTask}'s does not remove them, and prevents scheduling of new ones.
+   */
+  private void cancelRenderTasks() {
+    synchronized (m_renderTasks) {
+      m_stopped = true;
+      for (RenderTask<?> task : m_renderTasks) {
+        task.cancel();
+      }
+      m_renderTasks.clear();
+    }
+  }
+
+  /**
+   * @return the layout files of project, sorted by path.
+   */
+  private List<IFile> getLayoutFiles() throws Exception {
+    List<IFile> files = Lists.newArrayList();
+    IFolder resFolder = m_project.getFolder("res");
+    if (!resFolder.exists()) {
+      return files;
+    }
+    for (IResource folder : resFolder.members()) {
+      if (folder instanceof IFolder && folder.getName().startsWith("layout")) {
+        for (IResource file : ((IFolder) folder).members()) {
+          if (file instanceof IFile && "xml".equalsIgnoreCase(file.getFileExtension())) {
+            files.add((IFile) file);
+          }
+        }
+      }
+    }
+    Collections.sort(files, new Comparator<IFile>() {
+      public int compare(IFile o1, IFile o2) {
+        return o1.getFullPath().toString().compareTo(o2.getFullPath().toString());
+      }
+    });
+    return files;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Configuration
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class Configuration {
+    private final DisplayMetrics metrics;
+    private final ScreenOrientation orientation;
+    private final String themeName;
+
+    private Configuration(DisplayMetrics metrics, ScreenOrientation orientation, String themeName) {
+      this.metrics = metrics;
+      this.orientation = orientation;
+      this.themeName = themeName;
+    }
+
+    /**
+     * @return the name of folder for results of this configuration.
+     */
+    private String getFolderName() {
+      String name =
+          metrics.getPrompt() + "-" + orientation.name().toLowerCase() + "-" + themeName;
+      return name.replaceAll("[^\\w\\.\\-]", "_");
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // LayoutTask
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Renders single layout with single configuration and writes results.
+   */
+  private final class LayoutTask implements Callable<Object> {
+    private final IFile m_file;
+    private final Configuration m_configuration;
+    private final IAndroidTarget m_target;
+    private final AndroidTargetData m_data;
+    private final LayoutLibrary m_layoutLib;
+
+    private LayoutTask(IFile file,
+        Configuration configuration,
+        IAndroidTarget target,
+        AndroidTargetData data,
+        LayoutLibrary layoutLib) {
+      m_file = file;
+      m_configuration = configuration;
+      m_target = target;
+      m_data = data;
+      m_layoutLib = layoutLib;
+    }
+
+    private String getName() {
+      return m_configuration.getFolderName() + "/" + getRelativePath();
+    }
+
+    /**
+     * @return the path of layout relative to "res" folder, without extension.
+     */
+    private String getRelativePath() {
+      String name = StringUtils.substringBeforeLast(m_file.getName(), ".");
+      return m_file.getParent().getName() + "/" + name;
+    }
+
+    public Object call() throws Exception {
+      FileDocumentEditContext context = new FileDocumentEditContext(m_file);
+      try {
+        DocumentElement rootElement = context.getRoot();
+        RenderResult result = render(new AndroidNativeParser(rootElement));
+        // write results
+        File baseFile = new File(m_outputFolder, getName());
+        baseFile.getParentFile().mkdirs();
+        File imageFile = new File(baseFile.getPath() + ".png");
+        ImageIO.write(result.getImage(), "png", imageFile);
+        writeBounds(new File(baseFile.getPath() + ".json"), result.getRootViews());
+      } finally {
+        context.disconnect();
+      }
+      return null;
+    }
+
+    /**
+     * Renders layout in its own session on rendering thread.
+     */
+    private RenderResult render(final AndroidNativeParser parser) throws Exception {
+      Callable<RenderResult> renderer = new Callable<RenderResult>() {
+        public RenderResult call() throws Exception {
+          LegacyBridgeSupport.setCollector(null);
+          DisplayMetrics metrics = m_configuration.metrics;
+          FolderConfiguration config =
+              ConfigurationSupport.createConfig(
+                  metrics,
+                  m_configuration.orientation,
+                  m_target.getVersion().getApiLevel());
+          SessionParams params =
+              AndroidBridge.createSessionParams(
+                  m_project,
+                  m_target,
+                  m_data,
+                  m_layoutLib,
+                  parser,
+                  metrics,
+                  m_configuration.themeName,
+                  config,
+                  new RenderDiagnostics());
+          RenderSession session = m_layoutLib.createSession(params);
+          AndroidMetrics.INSTANCE.sessionCreated();
+          try {
+            AndroidBridge.checkResult(session.getResult());
+            return RenderResult.create(session);
+          } finally {
+            session.dispose();
+            AndroidMetrics.INSTANCE.sessionDisposed();
+          }
+        }
+      };
+      RenderTask<RenderResult> task;
+      synchronized (m_renderTasks) {
+        if (m_stopped) {
+          throw new OperationCanceledException();
+        }
+        task = RenderScheduler.INSTANCE.submit(this, RenderScheduler.PRIORITY_BACKGROUND, renderer);
+        m_renderTasks.add(task);
+      }
+      try {
+        return task.get();
+      } finally {
+        synchronized (m_renderTasks) {
+          m_renderTasks.remove(task);
+        }
+      }
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // JSON
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Writes bounds of given views and their children as JSON array.
+   */
+  private static void writeBounds(File file, List<ViewInfo> views) throws Exception {
+    StringBuilder buffer = new StringBuilder();
+    appendViews(buffer, views, "");
+    buffer.append('\n');
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(buffer.toString());
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static void appendViews(StringBuilder buffer, List<ViewInfo> views, String indent) {
+    buffer.append('[');
+    String childIndent = indent + "  ";
+    for (int i = 0; i < views.size(); i++) {
+      ViewInfo view = views.get(i);
+      buffer.append(i == 0 ? "\n" : ",\n").append(childIndent).append('{');
+      appendProperty(buffer, "class", StringUtils.defaultString(view.getClassName()));
+      buffer.append(", ");
+      Object cookie = view.getCookie();
+      if (cookie instanceof DocumentElement) {
+        String id = ((DocumentElement) cookie).getAttribute("android:id");
+        if (id != null) {
+          appendProperty(buffer, "id", id);
+          buffer.append(", ");
+        }
+      }
+      buffer.append("\"left\": ").append(view.getLeft());
+      buffer.append(", \"top\": ").append(view.getTop());
+      buffer.append(", \"right\": ").append(view.getRight());
+      buffer.append(", \"bottom\": ").append(view.getBottom());
+      List<ViewInfo> children = view.getChildren();
+      if (children != null && !children.isEmpty()) {
+        buffer.append(", \"children\": ");
+        appendViews(buffer, children, childIndent);
+      }
+      buffer.append('}');
+    }
+    if (!views.isEmpty()) {
+      buffer.append('\n').append(indent);
+    }
+    buffer.append(']');
+  }
+
+  private static void appendProperty(StringBuilder buffer, String name, String value) {
+    buffer.append('"').append(name).append("\": \"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        buffer.append('\\').append(c);
+      } else if (c < 0x20) {
+        buffer.append(String.format("\\u%04x", (int) c));
+      } else {
+        buffer.append(c);
+      }
+    }
+    buffer.append('"');
+  }
+}
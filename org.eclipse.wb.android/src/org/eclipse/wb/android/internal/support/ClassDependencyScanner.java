@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+
+/**
+ * Finds classes referenced by compiled class using its constant pool only, without parsing of
+ * fields, methods and code. Pool is read directly, so entries added by newer class file versions
+ * are skipped by size, without support of used ASM version.
+ * <p>
+ * Referenced classes are taken from class entries and from descriptors and signatures, so types
+ * used only as parameters, return values or generic arguments are also found.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class ClassDependencyScanner {
+  private static final int UTF8 = 1;
+  private static final int INT = 3;
+  private static final int FLOAT = 4;
+  private static final int LONG = 5;
+  private static final int DOUBLE = 6;
+  private static final int CLASS = 7;
+  private static final int STR = 8;
+  private static final int FIELD = 9;
+  private static final int METH = 10;
+  private static final int IMETH = 11;
+  private static final int NAME_TYPE = 12;
+  private static final int METHOD_HANDLE = 15;
+  private static final int METHOD_TYPE = 16;
+  private static final int DYNAMIC = 17;
+  private static final int INVOKE_DYNAMIC = 18;
+  private static final int MODULE = 19;
+  private static final int PACKAGE = 20;
+  private static final int MAGIC = 0xCAFEBABE;
+  private static final int CONSTANT_POOL_START = 10;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private ClassDependencyScanner() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the names of top level classes referenced by given class bytes, for example
+   *         "com.example.MyView" for both "com/example/MyView" and "com/example/MyView$Listener".
+   * @throws IllegalArgumentException
+   *           if given bytes are not class file or constant pool has unknown entries, for example
+   *           of newer class file version.
+   */
+  public static Set<String> getReferencedClasses(byte[] bytes) throws Exception {
+    try {
+      return getReferencedClasses0(bytes);
+    } catch (IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Truncated class file", e);
+    }
+  }
+
+  private static Set<String> getReferencedClasses0(byte[] bytes) throws Exception {
+    if (readInt(bytes, 0) != MAGIC) {
+      throw new IllegalArgumentException("Not a class file");
+    }
+    Set<String> classes = Sets.newHashSet();
+    int count = readUnsignedShort(bytes, CONSTANT_POOL_START - 2);
+    // class entries may refer to names declared after them, so resolve names after reading of pool
+    int[] offsets = new int[count];
+    int[] classNames = new int[count];
+    int classCount = 0;
+    int offset = CONSTANT_POOL_START;
+    for (int i = 1; i < count; i++) {
+      offsets[i] = offset;
+      int tag = bytes[offset];
+      switch (tag) {
+        case UTF8 :
+          int length = readUnsignedShort(bytes, offset + 1);
+          if (isDescriptor(bytes, offset + 3, length)) {
+            addDescriptorClasses(classes, readUTF8(bytes, offset));
+          }
+          offset += 3 + length;
+          break;
+        case CLASS :
+          classNames[classCount++] = readUnsignedShort(bytes, offset + 1);
+          offset += 3;
+          break;
+        case LONG :
+        case DOUBLE :
+          offset += 9;
+          // takes two entries
+          i++;
+          break;
+        case INT :
+        case FLOAT :
+        case FIELD :
+        case METH :
+        case IMETH :
+        case NAME_TYPE :
+        case DYNAMIC :
+        case INVOKE_DYNAMIC :
+          offset += 5;
+          break;
+        case METHOD_HANDLE :
+          offset += 4;
+          break;
+        case STR :
+        case METHOD_TYPE :
+        case MODULE :
+        case PACKAGE :
+          offset += 3;
+          break;
+        default :
+          throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+      }
+    }
+    for (int i = 0; i < classCount; i++) {
+      int nameOffset = offsets[classNames[i]];
+      if (bytes[nameOffset] != UTF8) {
+        throw new IllegalArgumentException("Invalid class name entry " + classNames[i]);
+      }
+      addClass(classes, readUTF8(bytes, nameOffset));
+    }
+    return classes;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Utils
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static int readUnsignedShort(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) << 8 | bytes[offset + 1] & 0xFF;
+  }
+
+  private static int readInt(byte[] bytes, int offset) {
+    return readUnsignedShort(bytes, offset) << 16 | readUnsignedShort(bytes, offset + 2);
+  }
+
+  /**
+   * @return the value of UTF8 entry with given offset.
+   */
+  private static String readUTF8(byte[] bytes, int offset) throws Exception {
+    int length = readUnsignedShort(bytes, offset + 1);
+    return new String(bytes, offset + 3, length, "UTF-8");
+  }
+
+  /**
+   * @return <code>true</code> if UTF8 entry looks like field/method descriptor or signature, i.e.
+   *         may contain class names.
+   */
+  private static boolean isDescriptor(byte[] bytes, int offset, int length) {
+    if (length < 3) {
+      return false;
+    }
+    byte first = bytes[offset];
+    if (first == '(' || first == '<') {
+      return true;
+    }
+    // field descriptor or signature, but not attribute name like "LineNumberTable"
+    return (first == 'L' || first == '[') && bytes[offset + length - 1] == ';';
+  }
+
+  /**
+   * Adds classes from "Lname;" parts of descriptor or signature.
+   */
+  private static void addDescriptorClasses(Set<String> classes, String descriptor) {
+    int length = descriptor.length();
+    int index = 0;
+    while (index < length) {
+      char c = descriptor.charAt(index);
+      if (c == 'L' || c == 'T') {
+        // class name or type variable, ':' ends name of formal type parameter
+        int end = index + 1;
+        while (end < length && ";<:".indexOf(descriptor.charAt(end)) == -1) {
+          end++;
+        }
+        if (c == 'L') {
+          addClass(classes, descriptor.substring(index + 1, end));
+        }
+        index = end;
+      }
+      index++;
+    }
+  }
+
+  /**
+   * Adds top level class for given internal name, array names are also accepted.
+   */
+  private static void addClass(Set<String> classes, String internalName) {
+    if (internalName.startsWith("[")) {
+      addDescriptorClasses(classes, internalName);
+      return;
+    }
+    int nestedIndex = internalName.indexOf('$');
+    if (nestedIndex != -1) {
+      internalName = internalName.substring(0, nestedIndex);
+    }
+    if (internalName.length() != 0) {
+      classes.add(internalName.replace('/', '.'));
+    }
+  }
+}
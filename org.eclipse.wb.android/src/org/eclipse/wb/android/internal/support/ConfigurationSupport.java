@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import org.eclipse.wb.android.internal.support.DeviceManager.DisplayMetrics;
+
+import org.eclipse.core.resources.IFile;
+
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.ide.common.resources.configuration.PixelDensityQualifier;
+import com.android.ide.common.resources.configuration.ScreenDimensionQualifier;
+import com.android.ide.common.resources.configuration.ScreenOrientationQualifier;
+import com.android.ide.common.resources.configuration.ScreenRatioQualifier;
+import com.android.ide.common.resources.configuration.ScreenSizeQualifier;
+import com.android.ide.common.resources.configuration.VersionQualifier;
+import com.android.ide.eclipse.adt.internal.sdk.LayoutDevice;
+import com.android.ide.eclipse.adt.internal.sdk.Sdk;
+import com.android.resources.Density;
+import com.android.resources.ScreenOrientation;
+import com.android.resources.ScreenRatio;
+import com.android.resources.ScreenSize;
+
+import org.apache.commons.collections.map.ReferenceMap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds {@link FolderConfiguration} for rendering using device selected for edited file.
+ * <p>
+ * Configuration is based on default layout device (for keyboard, navigation, etc.), with screen
+ * qualifiers derived from {@link DisplayMetrics}, orientation and API level. Result is remembered
+ * for each file and re-built only when some of these parameters is changed.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class ConfigurationSupport {
+  private static final int BASELINE_DPI = 160;
+  @SuppressWarnings("unchecked")
+  private static final Map<IFile, ConfigurationData> m_configurations =
+      Collections.synchronizedMap(new ReferenceMap(ReferenceMap.WEAK, ReferenceMap.HARD));
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private ConfigurationSupport() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the {@link FolderConfiguration} for given file and device parameters. Returned
+   *         configuration should not be modified.
+   */
+  public static FolderConfiguration getConfig(IFile file,
+      DisplayMetrics metrics,
+      ScreenOrientation orientation,
+      int apiLevel) {
+    Sdk sdk = AndroidBridge.getSdk();
+    String key =
+        metrics.getScreenWidth()
+            + "x"
+            + metrics.getScreenHeight()
+            + "/"
+            + metrics.getDensity()
+            + "/"
+            + orientation
+            + "/"
+            + apiLevel;
+    ConfigurationData data = m_configurations.get(file);
+    if (data == null || data.sdk != sdk || !data.key.equals(key)) {
+      FolderConfiguration config = createConfig(metrics, orientation, apiLevel);
+      data = new ConfigurationData(sdk, key, config);
+      m_configurations.put(file, data);
+    }
+    return data.config;
+  }
+
+  /**
+   * @return the new {@link FolderConfiguration} for given device parameters, not remembered.
+   */
+  public static FolderConfiguration createConfig(DisplayMetrics metrics,
+      ScreenOrientation orientation,
+      int apiLevel) {
+    FolderConfiguration config = new FolderConfiguration();
+    // use default device as base
+    {
+      Sdk sdk = AndroidBridge.getSdk();
+      List<LayoutDevice> devices = sdk.getLayoutDeviceManager().getCombinedList();
+      if (!devices.isEmpty() && !devices.get(0).getConfigs().isEmpty()) {
+        config.set(devices.get(0).getConfigs().get(0).getConfig());
+      } else {
+        config.createDefault();
+      }
+    }
+    // screen
+    int width = metrics.getScreenWidth();
+    int height = metrics.getScreenHeight();
+    int longSide = Math.max(width, height);
+    int shortSide = Math.min(width, height);
+    Density density = metrics.getDensity();
+    config.setScreenOrientationQualifier(new ScreenOrientationQualifier(orientation));
+    config.setPixelDensityQualifier(new PixelDensityQualifier(density));
+    config.setScreenDimensionQualifier(new ScreenDimensionQualifier(longSide, shortSide));
+    config.setScreenSizeQualifier(new ScreenSizeQualifier(getScreenSize(
+        longSide,
+        shortSide,
+        density)));
+    config.setScreenRatioQualifier(new ScreenRatioQualifier(longSide * 3 / shortSide >= 5
+        ? ScreenRatio.LONG
+        : ScreenRatio.NOTLONG));
+    // platform
+    config.setVersionQualifier(new VersionQualifier(apiLevel));
+    return config;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Implementation
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the {@link ScreenSize} for given screen size in pixels, using same rules as Android
+   *         does for size in dp.
+   */
+  private static ScreenSize getScreenSize(int longSide, int shortSide, Density density) {
+    int dpi = density.getDpiValue();
+    int longSideDp = longSide * BASELINE_DPI / dpi;
+    int shortSideDp = shortSide * BASELINE_DPI / dpi;
+    if (longSideDp >= 960 && shortSideDp >= 720) {
+      return ScreenSize.XLARGE;
+    }
+    if (longSideDp >= 640 && shortSideDp >= 480) {
+      return ScreenSize.LARGE;
+    }
+    if (longSideDp >= 470 && shortSideDp >= 320) {
+      return ScreenSize.NORMAL;
+    }
+    return ScreenSize.SMALL;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // ConfigurationData
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class ConfigurationData {
+    private final Sdk sdk;
+    private final String key;
+    private final FolderConfiguration config;
+
+    private ConfigurationData(Sdk sdk, String key, FolderConfiguration config) {
+      this.sdk = sdk;
+      this.key = key;
+      this.config = config;
+    }
+  }
+}
@@ -0,0 +1,551 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.eclipse.wb.internal.core.DesignerPlugin;
+import org.eclipse.wb.internal.core.utils.IOUtils2;
+import org.eclipse.wb.internal.core.utils.ast.AstNodeUtils;
+import org.eclipse.wb.internal.core.utils.execution.ExecutionUtils;
+import org.eclipse.wb.internal.core.utils.execution.RunnableEx;
+import org.eclipse.wb.internal.core.utils.jdt.core.CodeUtils;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide graph of dependencies between source types of projects, used to find all source
+ * files which custom views depend on.
+ * <p>
+ * Graph is built lazily, on shared background threads, and is kept in memory: when source file or
+ * its compiled classes are changed only its own references are forgotten, so next query re-reads
+ * only this file. Adding or removing source files or changing class path drops graph of project.
+ * Graph of project has also units of required projects, so changes of these projects are applied
+ * to it too.
+ * <p>
+ * References are read from constant pools of compiled classes, see {@link ClassDependencyScanner}.
+ * Source is parsed only if it is not compiled yet.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class DependencyGraph implements IResourceChangeListener {
+  private static final int THREADS = 2;
+  private static final String JAVA_EXTENSION = "java";
+  private static final String CLASS_EXTENSION = "class";
+  private static final String CLASSPATH_FILE = ".classpath";
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final DependencyGraph INSTANCE = new DependencyGraph();
+  private final Map<IProject, ProjectGraph> m_graphs = Maps.newHashMap();
+  private volatile ThreadPoolExecutor m_executor;
+
+  private DependencyGraph() {
+    m_executor = createExecutor();
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    return new ThreadPoolExecutor(THREADS,
+        THREADS,
+        0,
+        TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "WindowBuilder Android dependencies");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+        });
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Life cycle
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Starts tracking of workspace changes.
+   */
+  public void install() {
+    if (m_executor.isShutdown()) {
+      // installed again after uninstall()
+      m_executor = createExecutor();
+    }
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        this,
+        IResourceChangeEvent.POST_CHANGE);
+  }
+
+  /**
+   * Stops tracking of workspace changes, background searches and forgets all graphs.
+   */
+  public void uninstall() {
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+    m_executor.shutdownNow();
+    synchronized (m_graphs) {
+      m_graphs.clear();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Schedules search of source files which given types depend on, found files and paths of their
+   * class files are added into given {@link DependencyTracker}.
+   */
+  public void requestSources(final IJavaProject javaProject,
+      final Collection<String> typeNames,
+      final DependencyTracker tracker) {
+    m_executor.execute(new Runnable() {
+      public void run() {
+        ExecutionUtils.runLog(new RunnableEx() {
+          public void run() throws Exception {
+            for (IResource source : getSources(javaProject, typeNames)) {
+              tracker.addSource(source);
+              ICompilationUnit modelUnit = JavaCore.createCompilationUnitFrom((IFile) source);
+              for (IPath classPath : getClassPaths(modelUnit)) {
+                tracker.addClassPath(classPath);
+              }
+            }
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * @return the source files of given types and of all source types they depend on, directly or
+   *         indirectly. May be long operation when invoked first time for project.
+   */
+  public Set<IResource> getSources(IJavaProject javaProject, Collection<String> typeNames)
+      throws Exception {
+    ProjectGraph graph = getGraph(javaProject);
+    Set<IResource> sources = Sets.newHashSet();
+    Set<String> visited = Sets.newHashSet();
+    LinkedList<String> queue = Lists.newLinkedList(typeNames);
+    while (!queue.isEmpty()) {
+      String typeName = queue.removeFirst();
+      if (!visited.add(typeName)) {
+        continue;
+      }
+      Unit unit = graph.getUnit(typeName);
+      if (unit == null) {
+        continue;
+      }
+      sources.add(unit.resource);
+      for (String reference : graph.getReferences(unit)) {
+        if (!visited.contains(reference)) {
+          queue.add(reference);
+        }
+      }
+    }
+    return sources;
+  }
+
+  private ProjectGraph getGraph(IJavaProject javaProject) {
+    synchronized (m_graphs) {
+      ProjectGraph graph = m_graphs.get(javaProject.getProject());
+      if (graph == null) {
+        graph = new ProjectGraph(javaProject);
+        m_graphs.put(javaProject.getProject(), graph);
+      }
+      return graph;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // IResourceChangeListener
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public void resourceChanged(IResourceChangeEvent event) {
+    IResourceDelta delta = event.getDelta();
+    if (delta == null) {
+      return;
+    }
+    try {
+      delta.accept(new IResourceDeltaVisitor() {
+        public boolean visit(IResourceDelta memberDelta) throws CoreException {
+          IResource resource = memberDelta.getResource();
+          if (resource.getType() == IResource.PROJECT) {
+            IProject project = (IProject) resource;
+            if (memberDelta.getKind() == IResourceDelta.REMOVED || !project.isAccessible()) {
+              removeGraphs(project);
+              return false;
+            }
+            return !getGraphs(project).isEmpty();
+          }
+          if (resource.getType() == IResource.FILE) {
+            fileChanged(memberDelta);
+          }
+          return true;
+        }
+      });
+    } catch (Throwable e) {
+      DesignerPlugin.log(e);
+    }
+  }
+
+  private void fileChanged(IResourceDelta delta) {
+    IResource file = delta.getResource();
+    if (CLASSPATH_FILE.equals(file.getName())) {
+      removeGraphs(file.getProject());
+    } else if (JAVA_EXTENSION.equals(file.getFileExtension())) {
+      if (delta.getKind() == IResourceDelta.CHANGED) {
+        if ((delta.getFlags() & IResourceDelta.CONTENT) != 0) {
+          for (ProjectGraph graph : getGraphs(file.getProject())) {
+            graph.invalidate(file);
+          }
+        }
+      } else {
+        // types appeared or disappeared, references may be resolved differently
+        removeGraphs(file.getProject());
+      }
+    } else if (CLASS_EXTENSION.equals(file.getFileExtension())) {
+      for (ProjectGraph graph : getGraphs(file.getProject())) {
+        graph.invalidateClass(file);
+      }
+    }
+  }
+
+  /**
+   * @return the graphs which may have units of given project.
+   */
+  private List<ProjectGraph> getGraphs(IProject project) {
+    List<ProjectGraph> graphs = Lists.newArrayList();
+    synchronized (m_graphs) {
+      for (ProjectGraph graph : m_graphs.values()) {
+        if (graph.dependsOn(project)) {
+          graphs.add(graph);
+        }
+      }
+    }
+    return graphs;
+  }
+
+  /**
+   * Forgets graphs which may have units of given project.
+   */
+  private void removeGraphs(IProject project) {
+    synchronized (m_graphs) {
+      for (Iterator<ProjectGraph> I = m_graphs.values().iterator(); I.hasNext();) {
+        if (I.next().dependsOn(project)) {
+          I.remove();
+        }
+      }
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // ProjectGraph
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Dependencies between source types visible in single project, including source types of
+   * required projects.
+   */
+  private static final class ProjectGraph {
+    /**
+     * Marker for types without source in project, i.e. binary or not existing types.
+     */
+    private static final Unit NO_SOURCE = new Unit(null, null);
+    private final IJavaProject javaProject;
+    private final Set<String> projectNames = Sets.newHashSet();
+    private final Map<String, Unit> types = Maps.newHashMap();
+    private final Map<IResource, Unit> units = Maps.newHashMap();
+    private final Map<IResource, Unit> classUnits = Maps.newHashMap();
+
+    private ProjectGraph(IJavaProject javaProject) {
+      this.javaProject = javaProject;
+      projectNames.add(javaProject.getElementName());
+      ExecutionUtils.runLog(new RunnableEx() {
+        public void run() throws Exception {
+          Collections.addAll(projectNames, ProjectGraph.this.javaProject.getRequiredProjectNames());
+        }
+      });
+    }
+
+    /**
+     * @return <code>true</code> if this graph may have units of given project, i.e. it is graph
+     *         of this project or of project which requires it.
+     */
+    private synchronized boolean dependsOn(IProject project) {
+      return projectNames.contains(project.getName());
+    }
+
+    /**
+     * @return the {@link Unit} which declares given type, or <code>null</code> if type has no
+     *         source in project.
+     */
+    private Unit getUnit(String typeName) throws Exception {
+      synchronized (this) {
+        Unit unit = types.get(typeName);
+        if (unit != null) {
+          return unit != NO_SOURCE ? unit : null;
+        }
+      }
+      IType type = javaProject.findType(typeName.replace('$', '.'));
+      ICompilationUnit modelUnit =
+          type != null && !type.isBinary() ? type.getCompilationUnit() : null;
+      synchronized (this) {
+        if (modelUnit == null) {
+          types.put(typeName, NO_SOURCE);
+          return null;
+        }
+        IResource resource = modelUnit.getResource();
+        Unit unit = units.get(resource);
+        if (unit == null) {
+          unit = new Unit(modelUnit, resource);
+          units.put(resource, unit);
+          // may be project required indirectly
+          projectNames.add(resource.getProject().getName());
+        }
+        types.put(typeName, unit);
+        return unit;
+      }
+    }
+
+    /**
+     * @return the names of types referenced in given {@link Unit}.
+     */
+    private Set<String> getReferences(Unit unit) throws Exception {
+      synchronized (this) {
+        if (unit.references != null) {
+          return unit.references;
+        }
+      }
+      List<IFile> classFiles = getClassFiles(unit.modelUnit);
+      Set<String> references = getClassReferences(classFiles);
+      if (references == null) {
+        // not compiled yet or unsupported class file
+        references = findReferences(unit.modelUnit);
+      }
+      synchronized (this) {
+        unit.references = references;
+        if (units.get(unit.resource) == unit) {
+          for (IFile classFile : classFiles) {
+            classUnits.put(classFile, unit);
+          }
+        }
+      }
+      return references;
+    }
+
+    /**
+     * @return the names of types referenced in given class files, or <code>null</code> if there
+     *         are no class files or some of them can not be scanned.
+     */
+    private static Set<String> getClassReferences(List<IFile> classFiles) throws Exception {
+      if (classFiles.isEmpty()) {
+        return null;
+      }
+      Set<String> references = Sets.newHashSet();
+      for (IFile classFile : classFiles) {
+        byte[] bytes = IOUtils2.readBytes(classFile.getContents(true));
+        try {
+          references.addAll(ClassDependencyScanner.getReferencedClasses(bytes));
+        } catch (IllegalArgumentException e) {
+          return null;
+        }
+      }
+      return references;
+    }
+
+    /**
+     * Forgets references of source file compiled into given class file.
+     */
+    private synchronized void invalidateClass(IResource classFile) {
+      Unit unit = classUnits.get(classFile);
+      if (unit != null) {
+        invalidate(unit.resource);
+      }
+    }
+
+    /**
+     * Forgets references of given source file and types declared in it.
+     */
+    private synchronized void invalidate(IResource resource) {
+      Unit unit = units.remove(resource);
+      if (unit != null) {
+        for (Iterator<Unit> I = types.values().iterator(); I.hasNext();) {
+          if (I.next() == unit) {
+            I.remove();
+          }
+        }
+        for (Iterator<Unit> I = classUnits.values().iterator(); I.hasNext();) {
+          if (I.next() == unit) {
+            I.remove();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Single source file and names of types referenced in it.
+   */
+  private static final class Unit {
+    private final ICompilationUnit modelUnit;
+    private final IResource resource;
+    private Set<String> references;
+
+    private Unit(ICompilationUnit modelUnit, IResource resource) {
+      this.modelUnit = modelUnit;
+      this.resource = resource;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Class files
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the existing class files of all types (including nested and anonymous) declared in
+   *         given {@link ICompilationUnit}.
+   */
+  private static List<IFile> getClassFiles(ICompilationUnit modelUnit) throws Exception {
+    List<IFile> classFiles = Lists.newArrayList();
+    IFolder folder = ResourcesPlugin.getWorkspace().getRoot().getFolder(getOutputPath(modelUnit));
+    if (!folder.exists()) {
+      return classFiles;
+    }
+    IType[] types = modelUnit.getTypes();
+    for (IResource member : folder.members()) {
+      if (member instanceof IFile && CLASS_EXTENSION.equals(member.getFileExtension())) {
+        String className = member.getName();
+        className = className.substring(0, className.length() - CLASS_EXTENSION.length() - 1);
+        for (IType type : types) {
+          String typeName = type.getElementName();
+          if (className.equals(typeName) || className.startsWith(typeName + "$")) {
+            classFiles.add((IFile) member);
+            break;
+          }
+        }
+      }
+    }
+    return classFiles;
+  }
+
+  /**
+   * @return the paths of class files (without extension) of top level types declared in given
+   *         {@link ICompilationUnit}, may be not existing yet.
+   */
+  private static List<IPath> getClassPaths(ICompilationUnit modelUnit) throws Exception {
+    List<IPath> classPaths = Lists.newArrayList();
+    IPath outputPath = getOutputPath(modelUnit);
+    for (IType type : modelUnit.getTypes()) {
+      classPaths.add(outputPath.append(type.getElementName()));
+    }
+    return classPaths;
+  }
+
+  /**
+   * @return the path of output folder for package of given {@link ICompilationUnit}.
+   */
+  private static IPath getOutputPath(ICompilationUnit modelUnit) throws Exception {
+    IPackageFragmentRoot root =
+        (IPackageFragmentRoot) modelUnit.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+    IPath outputPath = root.getRawClasspathEntry().getOutputLocation();
+    if (outputPath == null) {
+      outputPath = modelUnit.getJavaProject().getOutputLocation();
+    }
+    String packageName = modelUnit.getParent().getElementName();
+    if (packageName.length() != 0) {
+      outputPath = outputPath.append(packageName.replace('.', '/'));
+    }
+    return outputPath;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Copied from JIU
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the fully qualified names of types referenced in given {@link ICompilationUnit}, used
+   *         when it is not compiled yet.
+   */
+  private static Set<String> findReferences(ICompilationUnit modelUnit) throws Exception {
+    final Set<String> references = Sets.newHashSet();
+    CompilationUnit astUnit = CodeUtils.parseCompilationUnit(modelUnit);
+    astUnit.accept(new ASTVisitor() {
+      @Override
+      public void endVisit(QualifiedName node) {
+        addType(node.resolveTypeBinding());
+      }
+
+      @Override
+      public void endVisit(SimpleName node) {
+        addType(node.resolveTypeBinding());
+      }
+
+      private void addType(final ITypeBinding binding) {
+        if (binding == null) {
+          return;
+        }
+        ExecutionUtils.runIgnore(new RunnableEx() {
+          public void run() throws Exception {
+            String typeName = AstNodeUtils.getFullyQualifiedName(binding, false);
+            if (typeName.indexOf('.') != -1) {
+              references.add(typeName);
+            }
+          }
+        });
+      }
+    });
+    return references;
+  }
+}
@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Sets;
+
+import org.eclipse.wb.internal.core.DesignerPlugin;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks changes of resources which edited layout depends on.
+ * <p>
+ * Changes are pushed by workspace delta as soon as they happen and accumulated as set of change
+ * kinds, so editor can decide on activation if it needs full reparse (components or their
+ * attributes changed) or only rendering (resources used by rendering changed). Changes are tracked
+ * in project of edited layout and in projects with tracked sources and classes, such as library
+ * projects.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class DependencyTracker implements IResourceChangeListener {
+  /**
+   * Source or class of custom View or of type it depends on changed.
+   */
+  public static final int CODE = 1;
+  /**
+   * Declaration of attributes changed.
+   */
+  public static final int ATTRS = 1 << 1;
+  /**
+   * Styles, themes or other values changed.
+   */
+  public static final int STYLE = 1 << 2;
+  /**
+   * Drawables or other non-value resources changed.
+   */
+  public static final int DRAWABLE = 1 << 3;
+  /**
+   * Other layout changed, for example included one.
+   */
+  public static final int LAYOUT = 1 << 4;
+  /**
+   * Generated <code>R</code> class changed, i.e. identifiers of resources.
+   */
+  public static final int R_CLASS = 1 << 5;
+  /**
+   * Changes which require full reparse of layout.
+   */
+  public static final int REPARSE_CHANGES = CODE | ATTRS;
+  private static final String RES_FOLDER = "res";
+  private static final String CLASS_EXTENSION = "class";
+  private final IProject m_project;
+  private final IFile m_file;
+  private final Set<IResource> m_sources =
+      Collections.synchronizedSet(Sets.<IResource>newHashSet());
+  private final Set<IPath> m_classPaths = Collections.synchronizedSet(Sets.<IPath>newHashSet());
+  private final Set<String> m_projectNames =
+      Collections.synchronizedSet(Sets.<String>newHashSet());
+  private final AtomicInteger m_changes = new AtomicInteger();
+  private volatile boolean m_trackClasses;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @param file
+   *          the edited layout file, its own changes are not tracked.
+   */
+  public DependencyTracker(IFile file) {
+    m_file = file;
+    m_project = file.getProject();
+    m_projectNames.add(m_project.getName());
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Life cycle
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public void install() {
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        this,
+        IResourceChangeEvent.POST_CHANGE);
+  }
+
+  public void uninstall() {
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Adds source file of custom View or of class it depends on.
+   */
+  public void addSource(IResource resource) {
+    m_sources.add(resource);
+    m_projectNames.add(resource.getProject().getName());
+  }
+
+  /**
+   * Adds path of class file of top level type declared in tracked source, without extension. Class
+   * files of nested and anonymous types of this type are tracked too.
+   */
+  public void addClassPath(IPath classPath) {
+    m_classPaths.add(classPath);
+    m_projectNames.add(classPath.segment(0));
+  }
+
+  /**
+   * Specifies if changes of generated <code>R</code> class should be tracked, i.e. if layout has
+   * custom Views which may use identifiers of resources.
+   */
+  public void setTrackClasses(boolean trackClasses) {
+    m_trackClasses = trackClasses;
+  }
+
+  /**
+   * @return the combination of change kinds since previous invocation, <code>0</code> if nothing
+   *         changed.
+   */
+  public int takeChanges() {
+    return m_changes.getAndSet(0);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // IResourceChangeListener
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public void resourceChanged(IResourceChangeEvent event) {
+    IResourceDelta delta = event.getDelta();
+    if (delta == null) {
+      return;
+    }
+    try {
+      delta.accept(new IResourceDeltaVisitor() {
+        public boolean visit(IResourceDelta memberDelta) throws CoreException {
+          IResource resource = memberDelta.getResource();
+          switch (resource.getType()) {
+            case IResource.PROJECT :
+              return m_projectNames.contains(resource.getName());
+            case IResource.FILE :
+              addChange(getChangeKind(resource));
+              break;
+          }
+          return true;
+        }
+      });
+    } catch (Throwable e) {
+      DesignerPlugin.log(e);
+    }
+  }
+
+  private void addChange(int kind) {
+    if (kind == 0) {
+      return;
+    }
+    int changes;
+    do {
+      changes = m_changes.get();
+    } while (!m_changes.compareAndSet(changes, changes | kind));
+  }
+
+  /**
+   * @return the kind of change for given changed file, <code>0</code> if it does not affect layout.
+   */
+  private int getChangeKind(IResource file) {
+    if (file.equals(m_file)) {
+      return 0;
+    }
+    IPath path = file.getProjectRelativePath();
+    if (RES_FOLDER.equals(path.segment(0))) {
+      if (path.segmentCount() < 3) {
+        return 0;
+      }
+      String folder = path.segment(1);
+      if (folder.startsWith("values")) {
+        return file.getName().startsWith("attrs") ? ATTRS : STYLE;
+      }
+      if (folder.startsWith("layout")) {
+        return LAYOUT;
+      }
+      return DRAWABLE;
+    }
+    if (isRClass(file)) {
+      return m_trackClasses ? R_CLASS : 0;
+    }
+    if (m_sources.contains(file)) {
+      return CODE;
+    }
+    if (CLASS_EXTENSION.equals(file.getFileExtension())
+        && m_classPaths.contains(getClassPath(file))) {
+      return CODE;
+    }
+    return 0;
+  }
+
+  /**
+   * @return <code>true</code> if given file is source or class file of generated <code>R</code>
+   *         class. It is regenerated on each change of resources, so its changes need only
+   *         refresh.
+   */
+  private static boolean isRClass(IResource file) {
+    String name = file.getName();
+    return name.equals("R.java")
+        || name.equals("R.class")
+        || name.startsWith("R$") && name.endsWith(".class");
+  }
+
+  /**
+   * @return the path of class file without extension and without name of nested type.
+   */
+  private static IPath getClassPath(IResource classFile) {
+    IPath path = classFile.getFullPath().removeFileExtension();
+    String name = path.lastSegment();
+    int index = name.indexOf('$');
+    if (index != -1) {
+      path = path.removeLastSegments(1).append(name.substring(0, index));
+    }
+    return path;
+  }
+}
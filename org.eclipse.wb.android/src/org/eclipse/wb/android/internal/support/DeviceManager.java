@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.wb.android.internal.support;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 import org.eclipse.wb.android.internal.Activator;
 import org.eclipse.wb.android.internal.model.widgets.ViewInfo;
 import org.eclipse.wb.draw2d.geometry.Dimension;
@@ -150,6 +153,34 @@ public final class DeviceManager {
     }
   }
 
+  /**
+   * @return the copy of given {@link DisplayMetrics}, so its orientation can be changed without
+   *         affecting given one.
+   */
+  public static DisplayMetrics copyMetrics(final DisplayMetrics metrics) {
+    final int xdpi = metrics.getXdpi();
+    final int ydpi = metrics.getYdpi();
+    final String prompt = metrics.getPrompt();
+    return new DisplayMetricsImpl(metrics.getScreenWidth(),
+        metrics.getScreenHeight(),
+        metrics.getDensity()) {
+      @Override
+      public int getXdpi() {
+        return xdpi;
+      }
+
+      @Override
+      public int getYdpi() {
+        return ydpi;
+      }
+
+      @Override
+      public String getPrompt() {
+        return prompt;
+      }
+    };
+  }
+
   /**
    * Default metrics.
    */
@@ -227,6 +258,28 @@ public final class DeviceManager {
     setMetrics(view.getContext().getFile(), metrics);
   }
 
+  /**
+   * @return the {@link DisplayMetrics} of all standard xVGA screens and given AVDs.
+   */
+  public static List<DisplayMetrics> getAllMetrics(List<AvdInfo> avds) {
+    List<DisplayMetrics> metricsList = Lists.newArrayList();
+    for (List<String> xvgaDpiValues : getXvgaDpiValues().values()) {
+      for (String xvgaDpiValue : xvgaDpiValues) {
+        DisplayMetrics metrics = getXvgaDpiMetrics(xvgaDpiValue);
+        if (metrics != null) {
+          metricsList.add(metrics);
+        }
+      }
+    }
+    for (AvdInfo avd : avds) {
+      DisplayMetrics metrics = getAvdMetrics(avd);
+      if (metrics != null) {
+        metricsList.add(metrics);
+      }
+    }
+    return metricsList;
+  }
+
   /**
    * @return Screen {@link Dimension} for given xVGA string.
    */
@@ -334,6 +387,29 @@ public final class DeviceManager {
   ////////////////////////////////////////////////////////////////////////////
   private static final QualifiedName KEY_xVGA_DPI = new QualifiedName(Activator.PLUGIN_ID,
       "devaceXvgaDpi");
+  /**
+   * Standard xVGA+dpi values, first element of each group is name of screen size.
+   */
+  private static final String[][] XVGA_DPI_GROUPS = {
+      {"Small", "QVGA/120"},
+      {"Normal", "HVGA/160", "WVGA800/240", "WVGA854/240", "WQVGA400/120", "WQVGA432/120"},
+      {"Large", "WVGA800/160", "WVGA854/160"},
+      {"xLarge", "WXGA/160"}};
+
+  /**
+   * @return the standard xVGA+dpi values grouped by name of screen size.
+   */
+  public static Map<String, List<String>> getXvgaDpiValues() {
+    Map<String, List<String>> groups = Maps.newLinkedHashMap();
+    for (String[] group : XVGA_DPI_GROUPS) {
+      List<String> values = Lists.newArrayList();
+      for (int i = 1; i < group.length; i++) {
+        values.add(group[i]);
+      }
+      groups.put(group[0], values);
+    }
+    return groups;
+  }
 
   /**
    * @return the {@link DisplayMetrics} for given xVGA+dpi string or <code>null</code> if unknown.
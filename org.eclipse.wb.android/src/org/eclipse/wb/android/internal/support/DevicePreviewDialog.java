@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Lists;
+
+import org.eclipse.wb.android.internal.Activator;
+import org.eclipse.wb.android.internal.model.widgets.ViewInfo;
+import org.eclipse.wb.android.internal.support.DeviceManager.DisplayMetrics;
+import org.eclipse.wb.android.internal.support.render.RenderResult;
+import org.eclipse.wb.android.internal.support.render.RenderScheduler.IRenderCallback;
+import org.eclipse.wb.android.internal.support.render.RenderScheduler.RenderTask;
+import org.eclipse.wb.internal.core.utils.ui.GridDataFactory;
+import org.eclipse.wb.internal.core.utils.ui.GridLayoutFactory;
+import org.eclipse.wb.internal.core.utils.ui.ImageUtils;
+import org.eclipse.wb.internal.core.utils.ui.dialogs.ResizableDialog;
+
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.ScrolledComposite;
+import org.eclipse.swt.events.MouseAdapter;
+import org.eclipse.swt.events.MouseEvent;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.List;
+
+/**
+ * The dialog showing current layout rendered for all known screens as grid of thumbnails.
+ * <p>
+ * Each screen is rendered in its own session on rendering thread, thumbnails are shown as soon as
+ * they are ready. Double click on thumbnail selects its screen for editor.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class DevicePreviewDialog extends ResizableDialog {
+  private static final int THUMBNAIL_SIZE = 200;
+  private static final int COLUMNS = 4;
+  private final ViewInfo m_rootObject;
+  private final List<Thumbnail> m_thumbnails = Lists.newArrayList();
+  private DisplayMetrics m_selectedMetrics;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public DevicePreviewDialog(Shell parentShell, ViewInfo rootObject) {
+    super(parentShell, Activator.getDefault());
+    m_rootObject = rootObject;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the {@link DisplayMetrics} selected by user, or <code>null</code> if none.
+   */
+  public DisplayMetrics getSelectedMetrics() {
+    return m_selectedMetrics;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Dialog
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  @Override
+  protected void configureShell(Shell newShell) {
+    super.configureShell(newShell);
+    newShell.setText("Preview all screens");
+  }
+
+  @Override
+  protected Control createDialogArea(Composite parent) {
+    Composite container = (Composite) super.createDialogArea(parent);
+    ScrolledComposite scrolledComposite =
+        new ScrolledComposite(container, SWT.H_SCROLL | SWT.V_SCROLL | SWT.BORDER);
+    GridDataFactory.create(scrolledComposite).grab().fill().hint(
+        (THUMBNAIL_SIZE + 10) * COLUMNS,
+        (THUMBNAIL_SIZE + 30) * 2);
+    Composite thumbnailsComposite = new Composite(scrolledComposite, SWT.NONE);
+    GridLayoutFactory.create(thumbnailsComposite).columns(COLUMNS);
+    // create thumbnails
+    AndroidBridge bridge = m_rootObject.getAndroidBridge();
+    for (DisplayMetrics metrics : DeviceManager.getAllMetrics(bridge.getAvds())) {
+      m_thumbnails.add(new Thumbnail(thumbnailsComposite, metrics));
+    }
+    // configure scrolling
+    scrolledComposite.setContent(thumbnailsComposite);
+    scrolledComposite.setExpandHorizontal(true);
+    scrolledComposite.setExpandVertical(true);
+    scrolledComposite.setMinSize(thumbnailsComposite.computeSize(SWT.DEFAULT, SWT.DEFAULT));
+    // schedule rendering
+    for (Thumbnail thumbnail : m_thumbnails) {
+      thumbnail.schedule(bridge);
+    }
+    return container;
+  }
+
+  @Override
+  protected void createButtonsForButtonBar(Composite parent) {
+    createButton(parent, IDialogConstants.CLOSE_ID, IDialogConstants.CLOSE_LABEL, true);
+  }
+
+  @Override
+  protected void buttonPressed(int buttonId) {
+    if (buttonId == IDialogConstants.CLOSE_ID) {
+      cancelPressed();
+    } else {
+      super.buttonPressed(buttonId);
+    }
+  }
+
+  @Override
+  public boolean close() {
+    for (Thumbnail thumbnail : m_thumbnails) {
+      thumbnail.dispose();
+    }
+    m_thumbnails.clear();
+    return super.close();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Thumbnail
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Thumbnail of single screen.
+   */
+  private final class Thumbnail implements IRenderCallback<RenderResult> {
+    private final DisplayMetrics m_metrics;
+    private final Canvas m_canvas;
+    private RenderTask<RenderResult> m_task;
+    private Image m_image;
+    private String m_message = "Rendering...";
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Constructor
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    private Thumbnail(Composite parent, DisplayMetrics metrics) {
+      m_metrics = metrics;
+      Composite composite = new Composite(parent, SWT.NONE);
+      GridLayoutFactory.create(composite).noMargins();
+      {
+        Label label = new Label(composite, SWT.NONE);
+        GridDataFactory.create(label).alignHC();
+        label.setText(metrics.getPrompt());
+      }
+      {
+        m_canvas = new Canvas(composite, SWT.DOUBLE_BUFFERED);
+        GridDataFactory.create(m_canvas).hint(THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+        m_canvas.setToolTipText("Double click to use this screen");
+        m_canvas.addPaintListener(new PaintListener() {
+          public void paintControl(PaintEvent e) {
+            paint(e.gc);
+          }
+        });
+        m_canvas.addMouseListener(new MouseAdapter() {
+          @Override
+          public void mouseDoubleClick(MouseEvent e) {
+            m_selectedMetrics = m_metrics;
+            okPressed();
+          }
+        });
+      }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Rendering
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    private void schedule(AndroidBridge bridge) {
+      m_task = bridge.schedulePreview(this, m_metrics, this);
+    }
+
+    public void done(RenderResult result) throws Exception {
+      if (!m_canvas.isDisposed()) {
+        m_image = ImageUtils.convertToSWT(result.getImage());
+        m_canvas.redraw();
+      }
+    }
+
+    public void failed(Throwable e) throws Exception {
+      if (!m_canvas.isDisposed()) {
+        m_message = "Rendering failed: " + StringUtils.defaultString(e.getMessage());
+        m_canvas.setToolTipText(m_message);
+        m_canvas.redraw();
+      }
+    }
+
+    private void dispose() {
+      if (m_task != null) {
+        m_task.cancel();
+      }
+      if (m_image != null) {
+        m_image.dispose();
+        m_image = null;
+      }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Painting
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    private void paint(GC gc) {
+      Point size = m_canvas.getSize();
+      if (m_image == null) {
+        gc.drawText(m_message, 5, 5, true);
+        return;
+      }
+      // fit image into canvas keeping aspect ratio
+      Rectangle imageBounds = m_image.getBounds();
+      double scale =
+          Math.min(
+              (double) size.x / imageBounds.width,
+              (double) size.y / imageBounds.height);
+      int width = (int) (imageBounds.width * scale);
+      int height = (int) (imageBounds.height * scale);
+      gc.setInterpolation(SWT.HIGH);
+      gc.drawImage(
+          m_image,
+          0,
+          0,
+          imageBounds.width,
+          imageBounds.height,
+          (size.x - width) / 2,
+          (size.y - height) / 2,
+          width,
+          height);
+    }
+  }
+}
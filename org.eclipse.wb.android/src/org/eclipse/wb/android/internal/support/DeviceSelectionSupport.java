@@ -16,6 +16,7 @@ import org.eclipse.wb.android.internal.Activator;
 import org.eclipse.wb.android.internal.model.widgets.ViewInfo;
 import org.eclipse.wb.android.internal.support.DeviceManager.DisplayMetrics;
 import org.eclipse.wb.core.model.broadcast.ObjectEventListener;
+import org.eclipse.wb.internal.core.DesignerPlugin;
 import org.eclipse.wb.internal.core.utils.execution.ExecutionUtils;
 import org.eclipse.wb.internal.core.utils.execution.RunnableEx;
 import org.eclipse.wb.internal.core.xml.model.IRootProcessor;
@@ -23,6 +24,7 @@ import org.eclipse.wb.internal.core.xml.model.XmlObjectInfo;
 
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.ContributionItem;
+import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
@@ -41,6 +43,7 @@ import com.android.sdklib.internal.avd.AvdInfo;
 import org.apache.commons.lang.StringUtils;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Implementation of {@link IRootProcessor} that provides device selection action on editor toolbar.
@@ -311,34 +314,43 @@ public final class DeviceSelectionSupport implements IRootProcessor {
           }
         });
       }
+      // preview
+      new MenuItem(menu, SWT.SEPARATOR);
+      {
+        MenuItem menuItem = new MenuItem(menu, SWT.NONE);
+        menuItem.setText("Preview all screens...");
+        // add listeners
+        menuItem.addListener(SWT.Selection, new Listener() {
+          public void handleEvent(Event event) {
+            DevicePreviewDialog dialog =
+                new DevicePreviewDialog(DesignerPlugin.getShell(), rootObject);
+            if (dialog.open() == Window.OK && dialog.getSelectedMetrics() != null) {
+              setMetrics(rootObject, dialog.getSelectedMetrics());
+            }
+          }
+        });
+      }
     }
 
     private void createXvgaItems() {
-      // Small
-      createXvgaItem(menu, "QVGA/120", "Small");
-      // Normal
-      {
-        final MenuItem normalMenuItem = new MenuItem(menu, SWT.CASCADE);
-        final Menu normalMenu = new Menu(normalMenuItem);
-        normalMenuItem.setText("Normal");
-        normalMenuItem.setMenu(normalMenu);
-        createXvgaItem(normalMenu, "HVGA/160", "HVGA");
-        createXvgaItem(normalMenu, "WVGA800/240", "WVGA800");
-        createXvgaItem(normalMenu, "WVGA854/240", "WVGA854");
-        createXvgaItem(normalMenu, "WQVGA400/120", "WQVGA400");
-        createXvgaItem(normalMenu, "WQVGA432/120", "WQVGA432");
-      }
-      // Large
-      {
-        final MenuItem largeMenuItem = new MenuItem(menu, SWT.CASCADE);
-        final Menu largeMenu = new Menu(largeMenuItem);
-        largeMenuItem.setText("Large");
-        largeMenuItem.setMenu(largeMenu);
-        createXvgaItem(largeMenu, "WVGA800/160", "WVGA800");
-        createXvgaItem(largeMenu, "WVGA854/160", "WVGA854");
+      Map<String, List<String>> groups = DeviceManager.getXvgaDpiValues();
+      for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+        String sizeName = entry.getKey();
+        List<String> xvgaDpiValues = entry.getValue();
+        // single screen of size, for example "Small"
+        if (xvgaDpiValues.size() == 1) {
+          createXvgaItem(menu, xvgaDpiValues.get(0), sizeName);
+          continue;
+        }
+        // several screens, for example "Normal"
+        final MenuItem sizeMenuItem = new MenuItem(menu, SWT.CASCADE);
+        final Menu sizeMenu = new Menu(sizeMenuItem);
+        sizeMenuItem.setText(sizeName);
+        sizeMenuItem.setMenu(sizeMenu);
+        for (String xvgaDpiValue : xvgaDpiValues) {
+          createXvgaItem(sizeMenu, xvgaDpiValue, StringUtils.substringBefore(xvgaDpiValue, "/"));
+        }
       }
-      // Extra Large
-      createXvgaItem(menu, "WXGA/160", "xLarge");
     }
 
     private void createXvgaItem(Menu parentMenu, String xvgaDpiValue, String text) {
@@ -0,0 +1,436 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.android.internal.Activator;
+import org.eclipse.wb.internal.core.DesignerPlugin;
+import org.eclipse.wb.internal.core.utils.IOUtils2;
+import org.eclipse.wb.internal.core.utils.asm.ToBytesClassAdapter;
+import org.eclipse.wb.internal.core.utils.reflect.ReflectionUtils;
+
+import com.android.ide.common.rendering.LayoutLibrary;
+import com.android.ide.eclipse.adt.internal.sdk.AndroidTargetData;
+import com.android.layoutlib.api.ILayoutBridge;
+import com.android.sdklib.IAndroidTarget;
+
+import org.apache.commons.lang.StringUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodAdapter;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * Support for legacy layout library API, which does not provide View instances.
+ * <p>
+ * Legacy bridge class is rewritten to invoke {@link IViewsCollector} for each View. Rewritten
+ * bytecode is cached on disk, keyed by path, length and modification time of layout library jar,
+ * with hash of bytecode stored next to it to detect broken cache file. Class loader and initialized
+ * bridge are shared by all editors of same target, views are routed to collector of editor which
+ * currently renders.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings({"restriction", "deprecation"})
+public final class LegacyBridgeSupport {
+  /**
+   * Version of rewriting, should be changed when {@link LegacyBridgeClassLoader} is changed, to
+   * ignore bytecode cached by previous version.
+   */
+  private static final int REWRITE_VERSION = 1;
+  private static final String CACHE_FOLDER = "legacyBridge";
+  private static final String HASH_EXTENSION = ".md5";
+  private static final Map<String, SharedBridge> m_bridges = Maps.newHashMap();
+  private static final RoutingCollector m_collector = new RoutingCollector();
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private LegacyBridgeSupport() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Checks for legacy API and installs shared rewritten legacy bridge to be able to collect View
+   * instances.
+   *
+   * @return the given {@link LayoutLibrary}.
+   */
+  public static LayoutLibrary install(AndroidTargetData data, LayoutLibrary layoutLibrary)
+      throws Exception {
+    if (ReflectionUtils.getFieldObject(layoutLibrary, "mBridge") != null) {
+      // do nothing, modern api
+      return layoutLibrary;
+    }
+    IAndroidTarget target = (IAndroidTarget) ReflectionUtils.getFieldObject(data, "mTarget");
+    synchronized (m_bridges) {
+      SharedBridge bridge = m_bridges.get(target.hashString());
+      // target data may be re-loaded, so check also layout library
+      if (bridge == null || bridge.layoutLibrary != layoutLibrary) {
+        bridge = createBridge(target, data, layoutLibrary);
+        m_bridges.put(target.hashString(), bridge);
+        // store
+        ReflectionUtils.setField(layoutLibrary, "mLegacyBridge", bridge.bridge);
+        ReflectionUtils.setField(layoutLibrary, "mClassLoader", bridge.classLoader);
+      }
+    }
+    return layoutLibrary;
+  }
+
+  /**
+   * Routes View instances collected by legacy bridges to given {@link IViewsCollector}, until next
+   * invocation. Should be invoked on rendering thread before each rendering.
+   *
+   * @param collector
+   *          the {@link IViewsCollector} to use, may be <code>null</code> to ignore Views.
+   */
+  public static void setCollector(IViewsCollector collector) {
+    m_collector.target = collector;
+  }
+
+  /**
+   * Forgets all shared bridges.
+   */
+  public static void clear() {
+    synchronized (m_bridges) {
+      m_bridges.clear();
+    }
+    m_collector.target = null;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Implementation
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static SharedBridge createBridge(IAndroidTarget target,
+      AndroidTargetData data,
+      LayoutLibrary layoutLibrary) throws Exception {
+    // create new bridge using rewriting class loader
+    Object legacyBridge = ReflectionUtils.getFieldObject(layoutLibrary, "mLegacyBridge");
+    URLClassLoader legacyClassLoader = (URLClassLoader) legacyBridge.getClass().getClassLoader();
+    URLClassLoader newClassLoader =
+        new LegacyBridgeClassLoader(legacyClassLoader.getURLs(),
+            LegacyBridgeSupport.class.getClassLoader());
+    // create new
+    Class<?> legacyClass = newClassLoader.loadClass(LayoutLibrary.CLASS_BRIDGE);
+    ILayoutBridge newLegacyBridge = (ILayoutBridge) legacyClass.newInstance();
+    // init
+    String fontPath = target.getPath(IAndroidTarget.FONTS);
+    newLegacyBridge.init(fontPath, data.getEnumValueMap());
+    // setup collector
+    ReflectionUtils.setField(newLegacyBridge, "collector", m_collector);
+    return new SharedBridge(layoutLibrary, newClassLoader, newLegacyBridge);
+  }
+
+  /**
+   * @return the file to cache rewritten bytecode of class loaded from given jars. Jars are not
+   *         read, only their paths, lengths and modification times are used.
+   */
+  private static File getCacheFile(URL[] urls) throws Exception {
+    StringBuilder key = new StringBuilder();
+    key.append(REWRITE_VERSION);
+    for (URL url : urls) {
+      File jarFile = toFile(url);
+      key.append('|').append(jarFile.getAbsolutePath());
+      key.append('|').append(jarFile.length());
+      key.append('|').append(jarFile.lastModified());
+    }
+    String name = getHash(key.toString().getBytes("UTF-8")) + ".class";
+    File folder = Activator.getDefault().getStateLocation().append(CACHE_FOLDER).toFile();
+    return new File(folder, name);
+  }
+
+  private static File toFile(URL url) {
+    try {
+      return new File(url.toURI());
+    } catch (Throwable e) {
+      return new File(url.getPath());
+    }
+  }
+
+  private static String getHash(byte[] bytes) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    return new BigInteger(1, digest.digest(bytes)).toString(16);
+  }
+
+  private static File getHashFile(File file) {
+    return new File(file.getPath() + HASH_EXTENSION);
+  }
+
+  /**
+   * @return the cached bytecode, or <code>null</code> if there is no cache or it does not match
+   *         stored hash.
+   */
+  private static byte[] readCache(File file) {
+    File hashFile = getHashFile(file);
+    if (file.isFile() && hashFile.isFile()) {
+      try {
+        byte[] bytes = IOUtils2.readBytes(new FileInputStream(file));
+        String hash = new String(IOUtils2.readBytes(new FileInputStream(hashFile)), "UTF-8");
+        if (hash.equals(getHash(bytes))) {
+          return bytes;
+        }
+      } catch (Throwable e) {
+        DesignerPlugin.log(e);
+      }
+    }
+    deleteCache(file);
+    return null;
+  }
+
+  private static void writeCache(File file, byte[] bytes) {
+    try {
+      file.getParentFile().mkdirs();
+      writeFile(file, bytes);
+      writeFile(getHashFile(file), getHash(bytes).getBytes("UTF-8"));
+    } catch (Throwable e) {
+      DesignerPlugin.log(e);
+    }
+  }
+
+  private static void deleteCache(File file) {
+    file.delete();
+    getHashFile(file).delete();
+  }
+
+  /**
+   * Writes into temporary file first, so other instance never reads partial file.
+   */
+  private static void writeFile(File file, byte[] bytes) throws Exception {
+    File tempFile = new File(file.getPath() + ".tmp");
+    OutputStream output = new FileOutputStream(tempFile);
+    try {
+      output.write(bytes);
+    } finally {
+      output.close();
+    }
+    file.delete();
+    if (!tempFile.renameTo(file)) {
+      tempFile.delete();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Inner classes
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class SharedBridge {
+    private final LayoutLibrary layoutLibrary;
+    private final URLClassLoader classLoader;
+    private final ILayoutBridge bridge;
+
+    private SharedBridge(LayoutLibrary layoutLibrary,
+        URLClassLoader classLoader,
+        ILayoutBridge bridge) {
+      this.layoutLibrary = layoutLibrary;
+      this.classLoader = classLoader;
+      this.bridge = bridge;
+    }
+  }
+  /**
+   * {@link IViewsCollector} injected into all legacy bridges, routes Views to collector of editor
+   * which currently renders.
+   */
+  private static final class RoutingCollector implements IViewsCollector {
+    private volatile IViewsCollector target;
+
+    public void collect(Object view, Object cookie) {
+      IViewsCollector collector = target;
+      if (collector != null) {
+        collector.collect(view, cookie);
+      }
+    }
+  }
+  /**
+   * Rewriting class loader which hooks 'visit()' method in legacy bridge and invokes collector for
+   * View objects.
+   */
+  private static final class LegacyBridgeClassLoader extends URLClassLoader {
+    private static final String VIEWS_COLLECTOR_NAME =
+        IViewsCollector.class.getName().replace('.', '/');
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Constructor
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    private LegacyBridgeClassLoader(URL[] urls, ClassLoader parent) {
+      super(urls, parent);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // ClassLoader
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    @Override
+    protected Class<?> findClass(String className) throws ClassNotFoundException {
+      if (LayoutLibrary.CLASS_BRIDGE.equals(className)) {
+        try {
+          // try cached rewritten class
+          File cacheFile = getCacheFile(getURLs());
+          byte[] bytes = readCache(cacheFile);
+          boolean cached = bytes != null;
+          if (!cached) {
+            bytes = rewrite(className);
+            writeCache(cacheFile, bytes);
+          }
+          // define package
+          {
+            String pkgName = StringUtils.substringBeforeLast(className, ".");
+            if (getPackage(pkgName) == null) {
+              definePackage(pkgName, null, null, null, null, null, null, null);
+            }
+          }
+          // return modified class
+          try {
+            return defineClass(className, bytes, 0, bytes.length);
+          } catch (ClassFormatError e) {
+            if (!cached) {
+              throw e;
+            }
+            // broken cache, rewrite again
+            deleteCache(cacheFile);
+            bytes = rewrite(className);
+            writeCache(cacheFile, bytes);
+            return defineClass(className, bytes, 0, bytes.length);
+          }
+        } catch (ClassNotFoundException e) {
+          throw e;
+        } catch (Throwable e) {
+          throw new ClassNotFoundException("Error loading class " + className, e);
+        }
+      } else {
+        // other classes
+        return super.findClass(className);
+      }
+    }
+
+    /**
+     * @return the bytes of given class with injected 'collector' field and invocations.
+     */
+    private byte[] rewrite(String className) throws Exception {
+      String classResourceName = className.replace('.', '/') + ".class";
+      InputStream input = getResourceAsStream(classResourceName);
+      if (input == null) {
+        throw new ClassNotFoundException(className);
+      }
+      // read class bytes
+      byte[] bytes = IOUtils2.readBytes(input);
+      ClassReader classReader = new ClassReader(bytes);
+      // rewrite
+      ToBytesClassAdapter rewriter = new ToBytesClassAdapter() {
+        private boolean isFieldPresent;
+
+        @Override
+        public FieldVisitor visitField(int access,
+            String name,
+            String desc,
+            String signature,
+            Object value) {
+          if (name.equals("collector")) {
+            isFieldPresent = true;
+          }
+          return cv.visitField(access, name, desc, signature, value);
+        }
+
+        @Override
+        public void visitEnd() {
+          if (!isFieldPresent) {
+            // inject 'collector' field
+            FieldVisitor fv =
+                cv.visitField(0, "collector", "L" + VIEWS_COLLECTOR_NAME + ";", null, null);
+            if (fv != null) {
+              fv.visitEnd();
+            }
+          }
+          cv.visitEnd();
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access,
+            String name,
+            String desc,
+            String signature,
+            String[] exceptions) {
+          if ("visit".equals(name)) {
+            MethodVisitor mv = cv.visitMethod(access, name, desc, signature, exceptions);
+            return new MethodAdapter(mv) {
+              private boolean beforeRetNull;
+
+              @Override
+              public void visitInsn(int opcode) {
+                // invoke 'collector.collect()' just before normal return
+                if (opcode >= IRETURN && opcode <= RETURN || opcode == ATHROW) {
+                  if (beforeRetNull) {
+                    // this is 'return null' code, do nothing
+                    beforeRetNull = false;
+                  } else {
+                    // 'collector.collect(view, bridgecontext.getViewKey(view));'
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitFieldInsn(
+                        GETFIELD,
+                        "com/android/layoutlib/bridge/Bridge",
+                        "collector",
+                        "L" + VIEWS_COLLECTOR_NAME + ";");
+                    mv.visitVarInsn(ALOAD, 1);
+                    mv.visitVarInsn(ALOAD, 2);
+                    mv.visitVarInsn(ALOAD, 1);
+                    mv.visitMethodInsn(
+                        INVOKEVIRTUAL,
+                        "com/android/layoutlib/bridge/BridgeContext",
+                        "getViewKey",
+                        "(Landroid/view/View;)Ljava/lang/Object;");
+                    mv.visitMethodInsn(
+                        INVOKEINTERFACE,
+                        VIEWS_COLLECTOR_NAME,
+                        "collect",
+                        "(Ljava/lang/Object;Ljava/lang/Object;)V");
+                  }
+                } else if (opcode == ACONST_NULL) {
+                  // skip injecting before 'return null'
+                  beforeRetNull = true;
+                }
+                mv.visitInsn(opcode);
+              };
+            };
+          } else {
+            return super.visitMethod(access, name, desc, signature, exceptions);
+          }
+        }
+      };
+      // do rewriting
+      classReader.accept(rewriter, 0);
+      return rewriter.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.eclipse.wb.android.internal.support.resources.ProjectChangesTracker;
+import org.eclipse.wb.internal.core.DesignerPlugin;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+import com.android.ide.common.rendering.LayoutLibrary;
+import com.android.ide.eclipse.adt.internal.editors.layout.ProjectCallback;
+import com.android.ide.eclipse.adt.internal.resources.manager.ProjectResources;
+import com.android.ide.eclipse.adt.internal.sdk.ProjectState;
+import com.android.ide.eclipse.adt.internal.sdk.Sdk;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Process-wide cache of {@link ProjectCallback}'s, one per project.
+ * <p>
+ * {@link ProjectCallback} keeps loaded custom view classes and mapping of "R" ids, so it is shared
+ * by all renderings of project. It is re-created only when compiled classes of project or of its
+ * required and library projects are changed (this includes "R" class) or when other
+ * {@link LayoutLibrary} is used.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class ProjectCallbackCache {
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final ProjectCallbackCache INSTANCE = new ProjectCallbackCache();
+  private final Map<IProject, Entry> m_entries = Maps.newHashMap();
+
+  private ProjectCallbackCache() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the shared {@link ProjectCallback} for given project, cached or new.
+   */
+  public ProjectCallback getCallback(IProject project,
+      LayoutLibrary layoutLib,
+      ProjectResources projectResources) {
+    String generation = getClassesGeneration(project);
+    synchronized (m_entries) {
+      Entry entry = m_entries.get(project);
+      if (entry == null
+          || entry.layoutLib != layoutLib
+          || entry.projectResources != projectResources
+          || !entry.generation.equals(generation)) {
+        ProjectCallback callback = new ProjectCallback(layoutLib, projectResources, project);
+        entry = new Entry(layoutLib, projectResources, generation, callback);
+        m_entries.put(project, entry);
+      }
+      return entry.callback;
+    }
+  }
+
+  /**
+   * @return the key with generations of classes of given project and of projects it depends on.
+   */
+  private static String getClassesGeneration(IProject project) {
+    Set<IProject> projects = Sets.newHashSet();
+    addProjects(projects, project);
+    Map<String, Long> generations = new TreeMap<String, Long>();
+    for (IProject dependency : projects) {
+      generations.put(
+          dependency.getName(),
+          ProjectChangesTracker.INSTANCE.getClassesGeneration(dependency));
+    }
+    return generations.toString();
+  }
+
+  /**
+   * Adds given project, its required Java projects and Android library projects.
+   */
+  private static void addProjects(Set<IProject> projects, IProject project) {
+    if (!projects.add(project) || !project.isAccessible()) {
+      return;
+    }
+    IWorkspaceRoot root = project.getWorkspace().getRoot();
+    try {
+      IJavaProject javaProject = JavaCore.create(project);
+      if (javaProject.exists()) {
+        for (String name : javaProject.getRequiredProjectNames()) {
+          addProjects(projects, root.getProject(name));
+        }
+      }
+    } catch (Throwable e) {
+      DesignerPlugin.log(e);
+    }
+    ProjectState state = Sdk.getProjectState(project);
+    if (state != null) {
+      for (IProject library : state.getFullLibraryProjects()) {
+        addProjects(projects, library);
+      }
+    }
+  }
+
+  /**
+   * Removes all cached callbacks.
+   */
+  public void clear() {
+    synchronized (m_entries) {
+      m_entries.clear();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Entry
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class Entry {
+    private final LayoutLibrary layoutLib;
+    private final ProjectResources projectResources;
+    private final String generation;
+    private final ProjectCallback callback;
+
+    private Entry(LayoutLibrary layoutLib,
+        ProjectResources projectResources,
+        String generation,
+        ProjectCallback callback) {
+      this.layoutLib = layoutLib;
+      this.projectResources = projectResources;
+      this.generation = generation;
+      this.callback = callback;
+    }
+  }
+}
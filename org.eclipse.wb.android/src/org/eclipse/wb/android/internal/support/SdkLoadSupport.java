@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Sets;
+
+import org.eclipse.wb.android.internal.IExceptionConstants;
+import org.eclipse.wb.internal.core.utils.exception.DesignerException;
+
+import org.eclipse.core.resources.IProject;
+
+import com.android.ide.common.sdk.LoadStatus;
+import com.android.ide.eclipse.adt.AdtPlugin;
+import com.android.ide.eclipse.adt.internal.sdk.AndroidTargetData;
+import com.android.ide.eclipse.adt.internal.sdk.ProjectState;
+import com.android.ide.eclipse.adt.internal.sdk.Sdk;
+import com.android.ide.eclipse.adt.internal.sdk.Sdk.ITargetChangeListener;
+import com.android.sdklib.IAndroidTarget;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Provides waiting for Android SDK, project target and its layout library to load.
+ * <p>
+ * Waiting threads are woken up by ADT load notifications, so there is no busy polling. Load
+ * status is also re-checked with large interval, because not each status change has notification.
+ * <p>
+ * ADT resolves targets of projects after loading of SDK, so missing target is reported only after
+ * notification about target of project, or if project has no target at all.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class SdkLoadSupport {
+  public static final long TIMEOUT = 2 * 60 * 1000;
+  private static final long RECHECK_INTERVAL = 500;
+  private static final Object m_lock = new Object();
+  private static boolean m_listenerInstalled;
+  private static final Set<IProject> m_resolvedProjects = Sets.newHashSet();
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private SdkLoadSupport() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the {@link Future} which is done when SDK, target of given project and its layout
+   *         library are loaded. Does not block.
+   */
+  public static Future<AndroidTargetData> whenReady(IProject project) {
+    installListener();
+    return new TargetDataFuture(project);
+  }
+
+  /**
+   * @return the loaded {@link Sdk}, waits for it at most {@link #TIMEOUT}.
+   */
+  public static Sdk getSdk() {
+    LoadStatus status = AdtPlugin.getDefault().getSdkLoadStatus();
+    if (status == LoadStatus.LOADING) {
+      installListener();
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while ((status = AdtPlugin.getDefault().getSdkLoadStatus()) == LoadStatus.LOADING) {
+        if (!await(deadline)) {
+          status = LoadStatus.FAILED;
+          break;
+        }
+      }
+    }
+    if (status == LoadStatus.FAILED) {
+      throw new DesignerException(IExceptionConstants.SDK_NOT_LOADED, "Android SDK");
+    }
+    return Sdk.getCurrent();
+  }
+
+  /**
+   * @return the loaded {@link AndroidTargetData} for given project, waits for it at most
+   *         {@link #TIMEOUT}.
+   */
+  public static AndroidTargetData getTargetData(IProject project) {
+    Future<AndroidTargetData> future = whenReady(project);
+    try {
+      return future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new DesignerException(IExceptionConstants.SDK_NOT_LOADED, cause, project.getName());
+    } catch (TimeoutException e) {
+      throw new DesignerException(IExceptionConstants.SDK_NOT_LOADED, e, project.getName());
+    } catch (InterruptedException e) {
+      throw new DesignerException(IExceptionConstants.SDK_NOT_LOADED, e, project.getName());
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Implementation
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static void installListener() {
+    synchronized (m_lock) {
+      if (m_listenerInstalled) {
+        return;
+      }
+      m_listenerInstalled = true;
+    }
+    AdtPlugin.getDefault().addTargetListener(new ITargetChangeListener() {
+      public void onSdkLoaded() {
+        wakeUp();
+      }
+
+      public void onTargetLoaded(IAndroidTarget target) {
+        wakeUp();
+      }
+
+      public void onProjectTargetChange(IProject changedProject) {
+        synchronized (m_lock) {
+          m_resolvedProjects.add(changedProject);
+        }
+        wakeUp();
+      }
+    });
+  }
+
+  /**
+   * @return <code>true</code> if ADT has resolved target of given project, or project does not
+   *         specify target at all.
+   */
+  private static boolean isTargetResolved(IProject project) {
+    ProjectState state = Sdk.getProjectState(project);
+    if (state != null && state.getTargetHashString() == null) {
+      return true;
+    }
+    synchronized (m_lock) {
+      return m_resolvedProjects.contains(project);
+    }
+  }
+
+  private static void wakeUp() {
+    synchronized (m_lock) {
+      m_lock.notifyAll();
+    }
+  }
+
+  /**
+   * Waits for load notification, but not longer than {@link #RECHECK_INTERVAL}.
+   *
+   * @return <code>false</code> if given deadline is exceeded.
+   */
+  private static boolean await(long deadline) {
+    long remaining = deadline - System.currentTimeMillis();
+    if (remaining <= 0) {
+      return false;
+    }
+    synchronized (m_lock) {
+      try {
+        m_lock.wait(Math.min(remaining, RECHECK_INTERVAL));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // TargetDataFuture
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class TargetDataFuture implements Future<AndroidTargetData> {
+    private final IProject m_project;
+    private volatile AndroidTargetData m_data;
+    private volatile Throwable m_exception;
+    private volatile boolean m_cancelled;
+
+    private TargetDataFuture(IProject project) {
+      m_project = project;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Future
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      if (isDone()) {
+        return false;
+      }
+      m_cancelled = true;
+      wakeUp();
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return m_cancelled;
+    }
+
+    public boolean isDone() {
+      return m_cancelled || check();
+    }
+
+    public AndroidTargetData get() throws InterruptedException, ExecutionException {
+      try {
+        return get(Long.MAX_VALUE / 2, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        throw new ExecutionException(e);
+      }
+    }
+
+    public AndroidTargetData get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+      while (!isDone()) {
+        if (!await(deadline)) {
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+          throw new TimeoutException();
+        }
+      }
+      if (m_cancelled) {
+        throw new CancellationException();
+      }
+      if (m_exception != null) {
+        throw new ExecutionException(m_exception);
+      }
+      return m_data;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Implementation
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    /**
+     * Checks load status, requests loading of target data if needed.
+     *
+     * @return <code>true</code> if loading is finished, successfully or not.
+     */
+    private synchronized boolean check() {
+      if (m_data != null || m_exception != null) {
+        return true;
+      }
+      try {
+        LoadStatus status = AdtPlugin.getDefault().getSdkLoadStatus();
+        if (status != LoadStatus.LOADING) {
+          checkFailed(status, "Android SDK");
+          Sdk sdk = Sdk.getCurrent();
+          IAndroidTarget target = sdk.getTarget(m_project);
+          if (target == null) {
+            if (isTargetResolved(m_project)) {
+              throw new DesignerException(IExceptionConstants.NO_TARGET, m_project.getName());
+            }
+            // target of project is not resolved yet
+            return false;
+          }
+          status = sdk.checkAndLoadTargetData(target, null);
+          if (status != LoadStatus.LOADING) {
+            checkFailed(status, target.getName());
+            AndroidTargetData data = sdk.getTargetData(target);
+            status = data.getLayoutLibrary().getStatus();
+            if (status != LoadStatus.LOADING) {
+              checkFailed(status, target.getName());
+              m_data = data;
+            }
+          }
+        }
+      } catch (Throwable e) {
+        m_exception = e;
+      }
+      return m_data != null || m_exception != null;
+    }
+
+    private void checkFailed(LoadStatus status, String what) {
+      if (status == LoadStatus.FAILED) {
+        throw new DesignerException(IExceptionConstants.SDK_NOT_LOADED, what);
+      }
+    }
+  }
+}
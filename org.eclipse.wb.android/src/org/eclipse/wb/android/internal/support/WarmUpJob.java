@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support;
+
+import com.google.common.collect.Sets;
+
+import org.eclipse.wb.android.internal.AndroidMetrics;
+import org.eclipse.wb.android.internal.parser.AndroidNativeParser;
+import org.eclipse.wb.android.internal.support.DeviceManager.DisplayMetrics;
+import org.eclipse.wb.android.internal.support.render.RenderScheduler;
+import org.eclipse.wb.android.internal.support.render.RenderScheduler.RenderTask;
+import org.eclipse.wb.android.internal.support.resources.ResourceResolverCache;
+import org.eclipse.wb.internal.core.DesignerPlugin;
+import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.android.ide.common.rendering.LayoutLibrary;
+import com.android.ide.common.rendering.api.LayoutLog;
+import com.android.ide.common.rendering.api.RenderResources;
+import com.android.ide.common.rendering.api.RenderSession;
+import com.android.ide.common.rendering.api.SessionParams;
+import com.android.ide.common.rendering.api.SessionParams.RenderingMode;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.ide.eclipse.adt.internal.resources.manager.ProjectResources;
+import com.android.ide.eclipse.adt.internal.resources.manager.ResourceManager;
+import com.android.ide.eclipse.adt.internal.sdk.AndroidTargetData;
+import com.android.resources.ScreenOrientation;
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.SdkConstants;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Background {@link Job} which prepares rendering before first Android editor is opened.
+ * <p>
+ * For each target used by open Android projects it waits for target data and layout library to
+ * load, configures resources for default device and theme (so they are ready in caches for editor)
+ * and renders trivial layout once, so that layout library classes are loaded and compiled.
+ * <p>
+ * First successful session is not disposed, but kept as standby for first editor of its project,
+ * see {@link #takeStandby(IProject, LayoutLibrary)}.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class WarmUpJob extends Job {
+  private static final long WAIT_STEP = 500;
+  private static final String DEFAULT_THEME = "Theme";
+  private static Standby m_standby;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public WarmUpJob() {
+    super("Preparing Android Designer");
+    setPriority(DECORATE);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Job
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  @Override
+  protected IStatus run(IProgressMonitor monitor) {
+    Set<String> targets = Sets.newHashSet();
+    for (IProject project : AndroidUtils.getOpenAndroidProjects()) {
+      if (monitor.isCanceled()) {
+        return Status.CANCEL_STATUS;
+      }
+      try {
+        AndroidTargetData data = waitTargetData(project, monitor);
+        if (data == null) {
+          return Status.CANCEL_STATUS;
+        }
+        IAndroidTarget target = AndroidBridge.getSdk().getTarget(project);
+        // warm up each target only once
+        if (target != null && targets.add(target.hashString())) {
+          warmUp(project, target, data);
+        }
+      } catch (Throwable e) {
+        // not critical, editor will report problems with SDK or project
+        DesignerPlugin.log(e);
+      }
+    }
+    return Status.OK_STATUS;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Implementation
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the loaded {@link AndroidTargetData} of given project, or <code>null</code> if job was
+   *         cancelled.
+   */
+  private static AndroidTargetData waitTargetData(IProject project, IProgressMonitor monitor)
+      throws Exception {
+    Future<AndroidTargetData> future = SdkLoadSupport.whenReady(project);
+    long deadline = System.currentTimeMillis() + SdkLoadSupport.TIMEOUT;
+    while (true) {
+      if (monitor.isCanceled()) {
+        future.cancel(false);
+        return null;
+      }
+      try {
+        return future.get(WAIT_STEP, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        if (System.currentTimeMillis() > deadline) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Configures resources and renders trivial layout for given project and target.
+   */
+  private void warmUp(final IProject project, IAndroidTarget target, AndroidTargetData data)
+      throws Exception {
+    // for legacy API, prepares shared rewritten bridge
+    final LayoutLibrary layoutLibrary =
+        LegacyBridgeSupport.install(data, data.getLayoutLibrary());
+    // resources for default device, same as used by editor
+    DisplayMetrics metrics = DeviceManager.getMetricsDefault();
+    FolderConfiguration config =
+        ConfigurationSupport.createConfig(
+            metrics,
+            ScreenOrientation.PORTRAIT,
+            target.getVersion().getApiLevel());
+    ProjectResources projectResources = ResourceManager.getInstance().getProjectResources(project);
+    RenderResources resources =
+        ResourceResolverCache.INSTANCE.getResolver(
+            project,
+            target,
+            projectResources,
+            data.getFrameworkResources(),
+            config,
+            DEFAULT_THEME);
+    // render trivial layout
+    final SessionParams params =
+        new SessionParams(new AndroidNativeParser(createLayout()),
+            RenderingMode.NORMAL,
+            null,
+            metrics.getScreenWidth(),
+            metrics.getScreenHeight(),
+            metrics.getDensity(),
+            metrics.getXdpi(),
+            metrics.getYdpi(),
+            resources,
+            ProjectCallbackCache.INSTANCE.getCallback(project, layoutLibrary, projectResources),
+            target.getVersion().getApiLevel(),
+            target.getVersion().getApiLevel(),
+            new LayoutLog());
+    RenderTask<Object> task =
+        RenderScheduler.INSTANCE.submit(
+            this,
+            RenderScheduler.PRIORITY_BACKGROUND,
+            new Callable<Object>() {
+              public Object call() throws Exception {
+                LegacyBridgeSupport.setCollector(null);
+                RenderSession session = layoutLibrary.createSession(params);
+                AndroidMetrics.INSTANCE.sessionCreated();
+                if (!keepStandby(new Standby(project, layoutLibrary, session))) {
+                  session.dispose();
+                  AndroidMetrics.INSTANCE.sessionDisposed();
+                }
+                return null;
+              }
+            });
+    task.get();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Standby
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Takes standby session rendered for given project and {@link LayoutLibrary}. Caller becomes
+   * owner of session and should dispose it on rendering thread.
+   *
+   * @return the {@link Standby} or <code>null</code> if there is no standby for given project.
+   */
+  public static synchronized Standby takeStandby(IProject project, LayoutLibrary layoutLibrary) {
+    Standby standby = m_standby;
+    if (standby != null
+        && standby.project.equals(project)
+        && standby.layoutLibrary == layoutLibrary) {
+      m_standby = null;
+      return standby;
+    }
+    return null;
+  }
+
+  /**
+   * Disposes standby session, if it was not taken by editor.
+   */
+  public static synchronized void disposeStandby() {
+    final Standby standby = m_standby;
+    m_standby = null;
+    if (standby != null) {
+      RenderScheduler.INSTANCE.submit(
+          WarmUpJob.class,
+          RenderScheduler.PRIORITY_BACKGROUND,
+          new Callable<Object>() {
+            public Object call() throws Exception {
+              standby.session.dispose();
+              AndroidMetrics.INSTANCE.sessionDisposed();
+              return null;
+            }
+          });
+    }
+  }
+
+  /**
+   * @return <code>true</code> if given successful {@link Standby} is kept, because there is no
+   *         other standby yet.
+   */
+  private static synchronized boolean keepStandby(Standby standby) {
+    if (m_standby == null && standby.session.getResult().isSuccess()) {
+      m_standby = standby;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * {@link RenderSession} rendered by warm up, which can be used by first editor.
+   */
+  public static final class Standby {
+    private final IProject project;
+    private final LayoutLibrary layoutLibrary;
+    private final RenderSession session;
+
+    private Standby(IProject project, LayoutLibrary layoutLibrary, RenderSession session) {
+      this.project = project;
+      this.layoutLibrary = layoutLibrary;
+      this.session = session;
+    }
+
+    /**
+     * @return the live {@link RenderSession} of trivial layout with default device and theme.
+     */
+    public RenderSession getSession() {
+      return session;
+    }
+  }
+
+  /**
+   * @return the root of trivial layout: "LinearLayout" with "TextView". Text is not set, so image
+   *         of standby session looks as empty layout and can be shown until editor is rendered.
+   */
+  private static DocumentElement createLayout() {
+    DocumentElement root = new DocumentElement("LinearLayout");
+    root.setAttribute("xmlns:android", SdkConstants.NS_RESOURCES);
+    root.setAttribute("android:layout_width", "fill_parent");
+    root.setAttribute("android:layout_height", "fill_parent");
+    DocumentElement text = new DocumentElement("TextView");
+    root.addChild(text);
+    text.setAttribute("android:layout_width", "wrap_content");
+    text.setAttribute("android:layout_height", "wrap_content");
+    return root;
+  }
+}
@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.render;
+
+import com.google.common.collect.Lists;
+
+import org.eclipse.wb.android.internal.AndroidMetrics;
+import org.eclipse.wb.draw2d.geometry.Rectangle;
+import org.eclipse.wb.internal.core.DesignerPlugin;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts rendered {@link BufferedImage}'s into SWT {@link Image}'s using reusable buffers, one
+ * per image size.
+ * <p>
+ * Each buffer keeps {@link ImageData} and SWT {@link Image} with content of previous conversion of
+ * same size. Pixels are read directly from raster when possible and compared with kept
+ * {@link ImageData}, only changed pixels are converted. Then only bands of changed rows are drawn
+ * into kept {@link Image}, so whole image is not transferred each time. Returned {@link Image} is
+ * copy of kept one, owned by caller.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class ImageConverter {
+  private static final int MAX_BUFFERS = 3;
+  private static final PaletteData PALETTE = new PaletteData(0xFF0000, 0xFF00, 0xFF);
+  private final Map<String, Buffer> m_buffers =
+      new LinkedHashMap<String, Buffer>(MAX_BUFFERS + 1, 0.75f, true) {
+        private static final long serialVersionUID = 0L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Buffer> eldest) {
+          if (size() > MAX_BUFFERS) {
+            eldest.getValue().dispose();
+            return true;
+          }
+          return false;
+        }
+      };
+  private Buffer m_lastBuffer;
+  private List<Rectangle> m_changedRegions;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Conversion
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the new SWT {@link Image} with same content as given {@link BufferedImage}.
+   */
+  public synchronized Image convert(BufferedImage image) {
+    Buffer buffer = getBuffer(image.getWidth(), image.getHeight());
+    boolean sameSize = buffer == m_lastBuffer;
+    List<Rectangle> bands = buffer.update(image);
+    m_changedRegions = sameSize ? bands : null;
+    m_lastBuffer = buffer;
+    return buffer.copyImage();
+  }
+
+  /**
+   * @return the new SWT {@link Image} with same content as result of last
+   *         {@link #convert(BufferedImage)}, or <code>null</code> if nothing was converted yet.
+   */
+  public synchronized Image getLastImage() {
+    if (m_lastBuffer == null) {
+      return null;
+    }
+    return m_lastBuffer.copyImage();
+  }
+
+  /**
+   * @return the areas changed by last {@link #convert(BufferedImage)} since previous one, exactly
+   *         by rows and bounded by changed columns in each band of rows. May be empty. Returns
+   *         <code>null</code> if whole image should be considered changed, because there is no
+   *         previous image or its size is different.
+   */
+  public synchronized List<Rectangle> getChangedRegions() {
+    return m_changedRegions;
+  }
+
+  /**
+   * Disposes kept {@link Image}'s. Should be invoked in UI thread.
+   */
+  public synchronized void dispose() {
+    for (Buffer buffer : m_buffers.values()) {
+      buffer.dispose();
+    }
+    m_buffers.clear();
+    m_lastBuffer = null;
+    m_changedRegions = null;
+  }
+
+  private Buffer getBuffer(int width, int height) {
+    String key = width + "x" + height;
+    Buffer buffer = m_buffers.get(key);
+    if (buffer == null) {
+      buffer = new Buffer(width, height);
+      m_buffers.put(key, buffer);
+    }
+    return buffer;
+  }
+
+  /**
+   * @return the array of ARGB pixels backing given {@link BufferedImage}, or <code>null</code> if
+   *         image has other layout.
+   */
+  static int[] getDirectPixels(BufferedImage image) {
+    if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+      return null;
+    }
+    DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+    if (!(dataBuffer instanceof DataBufferInt)
+        || dataBuffer.getNumBanks() != 1
+        || dataBuffer.getOffset() != 0
+        || image.getRaster().getParent() != null
+        || !(image.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+      return null;
+    }
+    SinglePixelPackedSampleModel sampleModel =
+        (SinglePixelPackedSampleModel) image.getSampleModel();
+    if (sampleModel.getScanlineStride() != image.getWidth()) {
+      return null;
+    }
+    return ((DataBufferInt) dataBuffer).getData();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Buffer
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Reusable {@link ImageData} and {@link Image} of single size.
+   */
+  private static final class Buffer {
+    private final int width;
+    private final int height;
+    private final ImageData imageData;
+    private Image image;
+    private boolean initialized;
+
+    private Buffer(int width, int height) {
+      this.width = width;
+      this.height = height;
+      imageData = new ImageData(width, height, 32, PALETTE);
+      imageData.alphaData = new byte[width * height];
+    }
+
+    private Image copyImage() {
+      return new Image(DesignerPlugin.getStandardDisplay(), image, SWT.IMAGE_COPY);
+    }
+
+    private void dispose() {
+      if (image != null) {
+        image.dispose();
+        image = null;
+      }
+    }
+
+    /**
+     * Updates {@link ImageData} and {@link Image} with content of given {@link BufferedImage}.
+     *
+     * @return the bands of changed rows, bounded by changed columns.
+     */
+    private List<Rectangle> update(BufferedImage source) {
+      int[] direct = getDirectPixels(source);
+      int[] row = direct == null ? new int[width] : null;
+      List<Rectangle> bands = Lists.newArrayList();
+      Rectangle band = null;
+      boolean opaque = true;
+      long changedPixels = 0;
+      for (int y = 0; y < height; y++) {
+        int[] pixels;
+        int offset;
+        if (direct != null) {
+          pixels = direct;
+          offset = y * width;
+        } else {
+          source.getRGB(0, y, width, 1, row, 0, width);
+          pixels = row;
+          offset = 0;
+        }
+        // find changed columns
+        int left = 0;
+        int right = width - 1;
+        if (initialized) {
+          while (left < width && !isChanged(pixels[offset + left], y, left)) {
+            left++;
+          }
+          while (right > left && !isChanged(pixels[offset + right], y, right)) {
+            right--;
+          }
+        }
+        if (left == width) {
+          band = null;
+          continue;
+        }
+        // convert changed columns
+        opaque &= updateRow(pixels, offset, y, left, right);
+        changedPixels += right - left + 1;
+        if (band == null) {
+          band = new Rectangle(left, y, right - left + 1, 1);
+          bands.add(band);
+        } else {
+          int bandRight = Math.max(band.right(), right + 1);
+          band.x = Math.min(band.x, left);
+          band.width = bandRight - band.x;
+          band.height++;
+        }
+      }
+      // 4 bytes of color and 1 byte of alpha per pixel
+      AndroidMetrics.INSTANCE.imageConverted(changedPixels * 5);
+      // update Image
+      if (image == null || !opaque) {
+        // translucent pixels would be blended with previous ones, so create new Image
+        dispose();
+        image = new Image(DesignerPlugin.getStandardDisplay(), imageData);
+      } else if (!bands.isEmpty()) {
+        GC gc = new GC(image);
+        try {
+          for (Rectangle rectangle : bands) {
+            drawBand(gc, rectangle);
+          }
+        } finally {
+          gc.dispose();
+        }
+      }
+      initialized = true;
+      return bands;
+    }
+
+    private boolean isChanged(int argb, int y, int x) {
+      int dataOffset = y * imageData.bytesPerLine + x * 4;
+      byte[] data = imageData.data;
+      return data[dataOffset + 1] != (byte) (argb >> 16)
+          || data[dataOffset + 2] != (byte) (argb >> 8)
+          || data[dataOffset + 3] != (byte) argb
+          || imageData.alphaData[y * width + x] != (byte) (argb >>> 24);
+    }
+
+    /**
+     * Converts given columns of row.
+     *
+     * @return <code>true</code> if all converted pixels are opaque.
+     */
+    private boolean updateRow(int[] source, int sourceOffset, int y, int left, int right) {
+      byte[] data = imageData.data;
+      byte[] alphaData = imageData.alphaData;
+      int dataOffset = y * imageData.bytesPerLine + left * 4;
+      int alphaOffset = y * width;
+      int alpha = 0xFF;
+      for (int x = left; x <= right; x++) {
+        int argb = source[sourceOffset + x];
+        data[dataOffset++] = 0;
+        data[dataOffset++] = (byte) (argb >> 16);
+        data[dataOffset++] = (byte) (argb >> 8);
+        data[dataOffset++] = (byte) argb;
+        alphaData[alphaOffset + x] = (byte) (argb >>> 24);
+        alpha &= argb >>> 24;
+      }
+      return alpha == 0xFF;
+    }
+
+    /**
+     * Draws given area of {@link ImageData} into {@link Image} using temporary {@link Image} of
+     * area size.
+     */
+    private void drawBand(GC gc, Rectangle band) {
+      ImageData bandData = new ImageData(band.width, band.height, 32, PALETTE);
+      for (int y = 0; y < band.height; y++) {
+        System.arraycopy(
+            imageData.data,
+            (band.y + y) * imageData.bytesPerLine + band.x * 4,
+            bandData.data,
+            y * bandData.bytesPerLine,
+            band.width * 4);
+      }
+      Image bandImage = new Image(DesignerPlugin.getStandardDisplay(), bandData);
+      try {
+        gc.drawImage(bandImage, band.x, band.y);
+      } finally {
+        bandImage.dispose();
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.render;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.android.internal.parser.AndroidNativeParser;
+import org.eclipse.wb.internal.core.utils.xml.DocumentAttribute;
+import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable copy of {@link DocumentElement} tree state, taken in UI thread before scheduling of
+ * rendering, so rendering thread never reads live tree which may be changed at the same time.
+ * <p>
+ * Contains elements in pre-order (used as cookies of views), their attributes and the
+ * {@link AndroidNativeParser} for layoutlib.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class LayoutSnapshot {
+  private final List<DocumentElement> m_elements = Lists.newArrayList();
+  private final List<Map<String, String>> m_attributes = Lists.newArrayList();
+  private final AndroidNativeParser m_parser;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @param parseOnly
+   *          is passed to {@link AndroidNativeParser}.
+   */
+  public LayoutSnapshot(DocumentElement rootElement, boolean parseOnly) {
+    addElement(rootElement);
+    m_parser = new AndroidNativeParser(rootElement, parseOnly);
+  }
+
+  private void addElement(DocumentElement element) {
+    m_elements.add(element);
+    Map<String, String> attributes = Maps.newHashMap();
+    for (DocumentAttribute attribute : element.getDocumentAttributes()) {
+      attributes.put(attribute.getName(), attribute.getValue());
+    }
+    m_attributes.add(Collections.unmodifiableMap(attributes));
+    for (DocumentElement child : element.getChildren()) {
+      addElement(child);
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the root {@link DocumentElement}.
+   */
+  public DocumentElement getRootElement() {
+    return m_elements.get(0);
+  }
+
+  /**
+   * @return the {@link DocumentElement}'s in pre-order.
+   */
+  public List<DocumentElement> getElements() {
+    return Collections.unmodifiableList(m_elements);
+  }
+
+  /**
+   * @return the attributes (qualified name to value) of element with given pre-order index.
+   */
+  public Map<String, String> getAttributes(int index) {
+    return m_attributes.get(index);
+  }
+
+  /**
+   * @return the parser which walks this snapshot. Parser can be used only once.
+   */
+  public AndroidNativeParser getParser() {
+    return m_parser;
+  }
+}
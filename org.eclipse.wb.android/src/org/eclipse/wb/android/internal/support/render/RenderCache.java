@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.render;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.internal.core.utils.reflect.ReflectionUtils;
+import org.eclipse.wb.internal.core.utils.xml.DocumentAttribute;
+import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
+
+import com.android.ide.common.rendering.api.ViewInfo;
+
+import java.awt.image.BufferedImage;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of {@link RenderResult}'s.
+ * <p>
+ * Device previews often request rendering of configuration which was rendered just before, for
+ * example when preview dialog is opened again without changes of layout. The key of the cache is
+ * built from content of {@link DocumentElement} tree, edited file and rendering configuration
+ * (device, orientation, theme, resources state), so on hit layoutlib is not invoked at all.
+ * <p>
+ * Cookies of cached {@link ViewInfo}'s are stored as indexes of {@link DocumentElement}'s in
+ * pre-order traversal, so cached result can be applied to another (but same by content) tree.
+ * <p>
+ * Only image, bounds and class names are cached. View and LayoutParams objects belong to session
+ * which is disposed later, so they are not kept: entries don't pin layoutlib objects, and cached
+ * {@link ViewInfo}'s have no View objects. So cached result can be used to show rendering, but
+ * model which needs View objects requires new session, and editor renderings are not cached.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class RenderCache {
+  private static final int MAX_ENTRIES = 16;
+  private static final long MAX_PIXELS = 8 * 1024 * 1024;
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final RenderCache INSTANCE = new RenderCache();
+  private final LinkedHashMap<String, CacheEntry> m_entries =
+      new LinkedHashMap<String, CacheEntry>(MAX_ENTRIES, 0.75f, true);
+  private final AtomicLong m_hits = new AtomicLong();
+  private final AtomicLong m_misses = new AtomicLong();
+  private long m_pixels;
+
+  private RenderCache() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Key
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the cache key for given {@link DocumentElement} tree rendered using given
+   *         configuration.
+   *
+   * @param configurationKey
+   *          the key describing file, device, orientation, theme and resources state.
+   */
+  public static String createKey(DocumentElement rootElement, String configurationKey) {
+    StringBuilder buffer = new StringBuilder();
+    appendElement(buffer, rootElement);
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      byte[] hash = digest.digest(buffer.toString().getBytes("UTF-8"));
+      return configurationKey + "#" + new BigInteger(1, hash).toString(16);
+    } catch (Throwable e) {
+      throw ReflectionUtils.propagate(e);
+    }
+  }
+
+  private static void appendElement(StringBuilder buffer, DocumentElement element) {
+    buffer.append('<').append(element.getTag());
+    for (DocumentAttribute attribute : element.getDocumentAttributes()) {
+      buffer.append(' ').append(attribute.getName());
+      buffer.append("=\"").append(attribute.getValue()).append('"');
+    }
+    buffer.append('>');
+    for (DocumentElement child : element.getChildren()) {
+      appendElement(buffer, child);
+    }
+    buffer.append("</>");
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @param elements
+   *          the {@link DocumentElement}'s of tree in pre-order.
+   * @return the cached {@link RenderResult} with cookies mapped to given elements, or
+   *         <code>null</code> if no result for given key.
+   */
+  public RenderResult get(String key, List<DocumentElement> elements) {
+    CacheEntry entry;
+    synchronized (m_entries) {
+      entry = m_entries.get(key);
+    }
+    if (entry == null) {
+      m_misses.incrementAndGet();
+      return null;
+    }
+    m_hits.incrementAndGet();
+    List<ViewInfo> rootViews = Lists.newArrayList();
+    for (CachedView view : entry.rootViews) {
+      rootViews.add(view.create(elements));
+    }
+    return new RenderResult(entry.image, rootViews, true);
+  }
+
+  /**
+   * Remembers given {@link RenderResult} of rendering given {@link DocumentElement} tree.
+   *
+   * @param elements
+   *          the {@link DocumentElement}'s of rendered tree in pre-order.
+   */
+  public void put(String key, List<DocumentElement> elements, RenderResult result) {
+    BufferedImage image = result.getImage();
+    if (image == null) {
+      return;
+    }
+    // image of session may be re-used by next rendering, so copy
+    BufferedImage imageCopy =
+        new BufferedImage(image.getColorModel(),
+            image.copyData(null),
+            image.isAlphaPremultiplied(),
+            null);
+    Map<Object, Integer> indexes = Maps.newHashMap();
+    for (int i = 0; i < elements.size(); i++) {
+      indexes.put(elements.get(i), i);
+    }
+    List<CachedView> rootViews = Lists.newArrayList();
+    for (ViewInfo viewInfo : result.getRootViews()) {
+      rootViews.add(new CachedView(viewInfo, indexes));
+    }
+    CacheEntry entry = new CacheEntry(imageCopy, rootViews);
+    synchronized (m_entries) {
+      CacheEntry oldEntry = m_entries.put(key, entry);
+      if (oldEntry != null) {
+        m_pixels -= oldEntry.getPixels();
+      }
+      m_pixels += entry.getPixels();
+      // evict least recently used
+      Iterator<CacheEntry> I = m_entries.values().iterator();
+      while (m_entries.size() > 1 && (m_entries.size() > MAX_ENTRIES || m_pixels > MAX_PIXELS)) {
+        m_pixels -= I.next().getPixels();
+        I.remove();
+      }
+    }
+  }
+
+  /**
+   * Removes all cached results.
+   */
+  public void clear() {
+    synchronized (m_entries) {
+      m_entries.clear();
+      m_pixels = 0;
+    }
+  }
+
+  /**
+   * Resets counts of hits and misses.
+   */
+  public void resetCounters() {
+    m_hits.set(0);
+    m_misses.set(0);
+  }
+
+  /**
+   * @return the count of requests which were served from cache.
+   */
+  public long getHitCount() {
+    return m_hits.get();
+  }
+
+  /**
+   * @return the count of requests which required rendering.
+   */
+  public long getMissCount() {
+    return m_misses.get();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Inner classes
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class CacheEntry {
+    private final BufferedImage image;
+    private final List<CachedView> rootViews;
+
+    private CacheEntry(BufferedImage image, List<CachedView> rootViews) {
+      this.image = image;
+      this.rootViews = rootViews;
+    }
+
+    private long getPixels() {
+      return (long) image.getWidth() * image.getHeight();
+    }
+  }
+  /**
+   * Copy of {@link ViewInfo} with cookie stored as index of {@link DocumentElement}, without View
+   * objects.
+   */
+  private static final class CachedView {
+    private final String className;
+    private final int elementIndex;
+    private final Object cookie;
+    private final int left;
+    private final int top;
+    private final int right;
+    private final int bottom;
+    private final List<CachedView> children = Lists.newArrayList();
+
+    private CachedView(ViewInfo viewInfo, Map<Object, Integer> indexes) {
+      Object viewCookie = viewInfo.getCookie();
+      Integer index = viewCookie != null ? indexes.get(viewCookie) : null;
+      className = viewInfo.getClassName();
+      elementIndex = index != null ? index.intValue() : -1;
+      cookie = index != null ? null : viewCookie;
+      left = viewInfo.getLeft();
+      top = viewInfo.getTop();
+      right = viewInfo.getRight();
+      bottom = viewInfo.getBottom();
+      for (ViewInfo child : viewInfo.getChildren()) {
+        children.add(new CachedView(child, indexes));
+      }
+    }
+
+    private ViewInfo create(List<DocumentElement> elements) {
+      Object viewCookie = elementIndex != -1 ? elements.get(elementIndex) : cookie;
+      ViewInfo viewInfo = new ViewInfo(className, viewCookie, left, top, right, bottom);
+      List<ViewInfo> childrenInfos = Lists.newArrayList();
+      for (CachedView child : children) {
+        childrenInfos.add(child.create(elements));
+      }
+      viewInfo.setChildren(childrenInfos);
+      return viewInfo;
+    }
+  }
+}
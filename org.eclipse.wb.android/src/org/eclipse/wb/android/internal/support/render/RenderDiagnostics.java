@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.render;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.android.ide.common.rendering.api.LayoutLog;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link LayoutLog} which collects layoutlib messages and timings of rendering phases.
+ * <p>
+ * Same messages are reported once, with count of repeats. Number of distinct messages is limited,
+ * so chatty views don't slow down rendering. Collected information is reset before each rendering.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class RenderDiagnostics extends LayoutLog {
+  public static final String PHASE_PARAMS = "params";
+  public static final String PHASE_SESSION = "session";
+  public static final String PHASE_UPDATE = "update";
+  public static final String PHASE_DEFAULTS = "defaults";
+  public static final String PHASE_HIERARCHY = "hierarchy";
+  public static final String PHASE_IMAGE = "image";
+  private static final int MAX_MESSAGES = 20;
+  private final Map<String, Message> m_messages = Maps.newLinkedHashMap();
+  private final Map<String, Long> m_timings = Maps.newLinkedHashMap();
+  private int m_suppressedCount;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Forgets all collected messages and timings.
+   */
+  public synchronized void reset() {
+    m_messages.clear();
+    m_timings.clear();
+    m_suppressedCount = 0;
+  }
+
+  /**
+   * Adds messages and timings collected by given {@link RenderDiagnostics}, so they can be used
+   * after it is reset for next rendering.
+   */
+  public synchronized void addAll(RenderDiagnostics diagnostics) {
+    synchronized (diagnostics) {
+      for (Map.Entry<String, Message> entry : diagnostics.m_messages.entrySet()) {
+        Message message = entry.getValue();
+        Message copy = m_messages.get(entry.getKey());
+        if (copy != null) {
+          copy.m_count += message.m_count;
+        } else if (m_messages.size() < MAX_MESSAGES) {
+          copy = new Message(message.m_kind, message.m_tag, message.m_text, message.m_throwable);
+          copy.m_count = message.m_count;
+          m_messages.put(entry.getKey(), copy);
+        } else {
+          m_suppressedCount += message.m_count;
+        }
+      }
+      for (Map.Entry<String, Long> entry : diagnostics.m_timings.entrySet()) {
+        Long previous = m_timings.get(entry.getKey());
+        long time = entry.getValue();
+        m_timings.put(entry.getKey(), previous != null ? previous + time : time);
+      }
+      m_suppressedCount += diagnostics.m_suppressedCount;
+    }
+  }
+
+  /**
+   * @return the distinct messages reported since last {@link #reset()}.
+   */
+  public synchronized List<Message> getMessages() {
+    return Lists.newArrayList(m_messages.values());
+  }
+
+  /**
+   * @return the number of messages not remembered because of limit.
+   */
+  public synchronized int getSuppressedCount() {
+    return m_suppressedCount;
+  }
+
+  /**
+   * Adds time spent in given phase, in nanoseconds.
+   *
+   * @param start
+   *          the value of {@link System#nanoTime()} when phase started.
+   */
+  public synchronized void addTiming(String phase, long start) {
+    long time = System.nanoTime() - start;
+    Long previous = m_timings.get(phase);
+    m_timings.put(phase, previous != null ? previous + time : time);
+  }
+
+  /**
+   * @return the times in nanoseconds spent in phases since last {@link #reset()}, in order of
+   *         phases.
+   */
+  public synchronized Map<String, Long> getTimings() {
+    return Collections.unmodifiableMap(Maps.newLinkedHashMap(m_timings));
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder buffer = new StringBuilder();
+    for (Map.Entry<String, Long> entry : m_timings.entrySet()) {
+      if (buffer.length() != 0) {
+        buffer.append(", ");
+      }
+      buffer.append(entry.getKey()).append('=').append(entry.getValue() / 1000000).append("ms");
+    }
+    return buffer.toString();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // LayoutLog
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  @Override
+  public void error(String tag, String message, Object data) {
+    add(Message.ERROR, tag, message, null);
+  }
+
+  @Override
+  public void error(String tag, String message, Throwable throwable, Object data) {
+    add(Message.ERROR, tag, message, throwable);
+  }
+
+  @Override
+  public void warning(String tag, String message, Object data) {
+    add(Message.WARNING, tag, message, null);
+  }
+
+  @Override
+  public void fidelityWarning(String tag, String message, Throwable throwable, Object data) {
+    add(Message.FIDELITY_WARNING, tag, message, throwable);
+  }
+
+  private synchronized void add(int kind, String tag, String text, Throwable throwable) {
+    String key = kind + "/" + tag + "/" + text;
+    Message message = m_messages.get(key);
+    if (message != null) {
+      message.m_count++;
+    } else if (m_messages.size() < MAX_MESSAGES) {
+      m_messages.put(key, new Message(kind, tag, text, throwable));
+    } else {
+      m_suppressedCount++;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Message
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Single distinct message of layoutlib.
+   */
+  public static final class Message {
+    public static final int ERROR = 0;
+    public static final int WARNING = 1;
+    public static final int FIDELITY_WARNING = 2;
+    private final int m_kind;
+    private final String m_tag;
+    private final String m_text;
+    private final Throwable m_throwable;
+    private int m_count = 1;
+
+    private Message(int kind, String tag, String text, Throwable throwable) {
+      m_kind = kind;
+      m_tag = tag;
+      m_text = text;
+      m_throwable = throwable;
+    }
+
+    public int getKind() {
+      return m_kind;
+    }
+
+    public String getTag() {
+      return m_tag;
+    }
+
+    public String getText() {
+      return m_text;
+    }
+
+    public Throwable getThrowable() {
+      return m_throwable;
+    }
+
+    /**
+     * @return the number of times this message was reported.
+     */
+    public int getCount() {
+      return m_count;
+    }
+
+    @Override
+    public String toString() {
+      String prefix = m_kind == ERROR ? "Error" : "Warning";
+      String text = prefix + ": " + ObjectUtils.toString(m_text);
+      return m_count == 1 ? text : text + " (" + m_count + " times)";
+    }
+  }
+}
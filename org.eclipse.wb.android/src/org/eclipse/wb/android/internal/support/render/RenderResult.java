@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.render;
+
+import com.android.ide.common.rendering.api.RenderSession;
+import com.android.ide.common.rendering.api.ViewInfo;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of layout rendering: image and hierarchy of {@link ViewInfo}'s. Can be obtained from
+ * live {@link RenderSession} or from {@link RenderCache}.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class RenderResult {
+  private final BufferedImage m_image;
+  private final List<ViewInfo> m_rootViews;
+  private final boolean m_cached;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  RenderResult(BufferedImage image, List<ViewInfo> rootViews, boolean cached) {
+    m_image = image;
+    m_rootViews = rootViews;
+    m_cached = cached;
+  }
+
+  /**
+   * @return the {@link RenderResult} for current state of given {@link RenderSession}.
+   */
+  public static RenderResult create(RenderSession session) {
+    return new RenderResult(session.getImage(), session.getRootViews(), false);
+  }
+
+  /**
+   * @return the {@link RenderResult} with given image and {@link ViewInfo}'s, not obtained from
+   *         {@link RenderCache}.
+   */
+  public static RenderResult create(BufferedImage image, List<ViewInfo> rootViews) {
+    return new RenderResult(image, rootViews, false);
+  }
+
+  /**
+   * @return the {@link RenderResult} with image of given result only, so it does not reference
+   *         View objects and can be used after disposing of {@link RenderSession}.
+   */
+  public static RenderResult createImageOnly(RenderResult result) {
+    List<ViewInfo> rootViews = Collections.emptyList();
+    return new RenderResult(result.getImage(), rootViews, result.isCached());
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the rendered image.
+   */
+  public BufferedImage getImage() {
+    return m_image;
+  }
+
+  /**
+   * @return the root {@link ViewInfo}'s.
+   */
+  public List<ViewInfo> getRootViews() {
+    return m_rootViews;
+  }
+
+  /**
+   * @return <code>true</code> if this result was taken from {@link RenderCache}, so layoutlib was
+   *         not invoked and {@link ViewInfo}'s have no View objects.
+   */
+  public boolean isCached() {
+    return m_cached;
+  }
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.render;
+
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.android.internal.IExceptionConstants;
+import org.eclipse.wb.internal.core.DesignerPlugin;
+import org.eclipse.wb.internal.core.utils.exception.DesignerException;
+import org.eclipse.wb.internal.core.utils.execution.ExecutionUtils;
+import org.eclipse.wb.internal.core.utils.execution.RunnableEx;
+import org.eclipse.wb.internal.core.utils.reflect.ReflectionUtils;
+
+import org.eclipse.swt.custom.BusyIndicator;
+import org.eclipse.swt.widgets.Display;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes layoutlib operations on background worker thread.
+ * <p>
+ * Layoutlib allows only one rendering at a time, so all operations are executed on single thread.
+ * Requests of visible editor are executed before requests of background editors. New request of
+ * some owner (usually {@link org.eclipse.wb.android.internal.support.AndroidBridge}) cancels its
+ * requests which are not started yet, and results of obsolete requests are not delivered.
+ * <p>
+ * Editor does not wait for rendering: results are delivered to {@link IRenderCallback} in UI
+ * thread, so user can continue editing layout while rendering. So operations should not read live
+ * XML tree, but {@link LayoutSnapshot} taken before scheduling.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class RenderScheduler {
+  public static final int PRIORITY_VISIBLE = 0;
+  public static final int PRIORITY_BACKGROUND = 1;
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final RenderScheduler INSTANCE = new RenderScheduler();
+  private final AtomicLong m_sequenceCounter = new AtomicLong();
+  private final Map<Object, RenderTask<?>> m_latestTasks = Maps.newHashMap();
+  private final ThreadPoolExecutor m_executor;
+  private volatile Thread m_workerThread;
+
+  private RenderScheduler() {
+    m_executor =
+        new ThreadPoolExecutor(1,
+            1,
+            0,
+            TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "WindowBuilder Android rendering");
+                thread.setDaemon(true);
+                m_workerThread = thread;
+                return thread;
+              }
+            });
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Scheduling
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Schedules given operation. Not yet started operations of same owner are cancelled.
+   *
+   * @return the {@link RenderTask} to wait for result.
+   */
+  public <T> RenderTask<T> submit(Object owner, int priority, Callable<T> callable) {
+    return schedule(owner, priority, callable, null);
+  }
+
+  /**
+   * Schedules given operation and notifies given {@link IRenderCallback} in UI thread, if this
+   * operation is not obsolete at the moment of its completion.
+   */
+  public <T> RenderTask<T> schedule(Object owner,
+      int priority,
+      Callable<T> callable,
+      IRenderCallback<T> callback) {
+    long sequence = m_sequenceCounter.incrementAndGet();
+    RenderTask<T> task = new RenderTask<T>(owner, priority, sequence, callable, callback);
+    synchronized (m_latestTasks) {
+      RenderTask<?> previousTask = m_latestTasks.put(owner, task);
+      if (previousTask != null) {
+        previousTask.cancelPending();
+      }
+    }
+    m_executor.execute(task);
+    return task;
+  }
+
+  /**
+   * Executes given operation with {@link #PRIORITY_VISIBLE} and waits for its result.
+   */
+  public <T> T run(Object owner, Callable<T> callable) throws Exception {
+    if (Thread.currentThread() == m_workerThread) {
+      // nested operation, execute now
+      return callable.call();
+    }
+    return await(submit(owner, PRIORITY_VISIBLE, callable));
+  }
+
+  /**
+   * Waits for result of given {@link RenderTask}. If invoked in UI thread, shows busy cursor while
+   * waiting.
+   *
+   * @return the result of operation.
+   */
+  public <T> T await(final RenderTask<T> task) throws Exception {
+    Display display = Display.getCurrent();
+    if (display != null) {
+      BusyIndicator.showWhile(display, new Runnable() {
+        public void run() {
+          ExecutionUtils.runIgnore(new RunnableEx() {
+            public void run() throws Exception {
+              task.await(Long.MAX_VALUE);
+            }
+          });
+        }
+      });
+    }
+    return task.get();
+  }
+
+  /**
+   * Removes finished {@link RenderTask} from the latest tasks.
+   *
+   * @return <code>true</code> if given task is still the latest for its owner.
+   */
+  private boolean done(RenderTask<?> task) {
+    synchronized (m_latestTasks) {
+      if (m_latestTasks.get(task.m_owner) == task) {
+        m_latestTasks.remove(task.m_owner);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // IRenderCallback
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Receives results of asynchronous operations in UI thread.
+   */
+  public interface IRenderCallback<T> {
+    /**
+     * Operation finished successfully.
+     */
+    void done(T result) throws Exception;
+
+    /**
+     * Operation failed with given exception.
+     */
+    void failed(Throwable e) throws Exception;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // RenderTask
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Scheduled layoutlib operation.
+   */
+  public final class RenderTask<T> implements Runnable, Comparable<RenderTask<?>> {
+    private final Object m_owner;
+    private final int m_priority;
+    private final long m_sequence;
+    private final FutureTask<T> m_future;
+    private final IRenderCallback<T> m_callback;
+    private volatile boolean m_started;
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Constructor
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    private RenderTask(Object owner,
+        int priority,
+        long sequence,
+        Callable<T> callable,
+        IRenderCallback<T> callback) {
+      m_owner = owner;
+      m_priority = priority;
+      m_sequence = sequence;
+      m_future = new FutureTask<T>(callable);
+      m_callback = callback;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Runnable
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    public void run() {
+      synchronized (this) {
+        if (m_future.isCancelled()) {
+          return;
+        }
+        m_started = true;
+      }
+      m_future.run();
+      if (done(this) && m_callback != null && !m_future.isCancelled()) {
+        DesignerPlugin.getStandardDisplay().asyncExec(new Runnable() {
+          public void run() {
+            try {
+              T result;
+              try {
+                result = get();
+              } catch (Throwable e) {
+                m_callback.failed(e);
+                return;
+              }
+              m_callback.done(result);
+            } catch (Throwable e) {
+              DesignerPlugin.log(e);
+            }
+          }
+        });
+      }
+    }
+
+    public int compareTo(RenderTask<?> o) {
+      if (m_priority != o.m_priority) {
+        return m_priority < o.m_priority ? -1 : 1;
+      }
+      return m_sequence < o.m_sequence ? -1 : m_sequence == o.m_sequence ? 0 : 1;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Access
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    /**
+     * Cancels this task if it is not started yet.
+     */
+    private synchronized void cancelPending() {
+      if (!m_started) {
+        m_future.cancel(false);
+      }
+    }
+
+    /**
+     * Cancels this task. If already started, it will run to the end, but result is ignored.
+     */
+    public void cancel() {
+      m_future.cancel(false);
+      done(this);
+    }
+
+    /**
+     * Waits given time for this task to finish.
+     *
+     * @return <code>true</code> if task is finished (or cancelled).
+     */
+    public boolean await(long timeout) throws InterruptedException {
+      try {
+        m_future.get(timeout, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        return false;
+      } catch (ExecutionException e) {
+        // finished with exception
+      } catch (CancellationException e) {
+        // cancelled
+      }
+      return true;
+    }
+
+    /**
+     * Waits for this task and returns its result.
+     */
+    public T get() throws Exception {
+      try {
+        return m_future.get();
+      } catch (CancellationException e) {
+        throw new DesignerException(IExceptionConstants.RENDERING_CANCELLED);
+      } catch (ExecutionException e) {
+        throw ReflectionUtils.propagate(e.getCause());
+      }
+    }
+  }
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.render;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.android.internal.AndroidMetrics;
+import org.eclipse.wb.internal.core.utils.xml.DocumentElement;
+
+import com.android.ide.common.rendering.LayoutLibrary;
+import com.android.ide.common.rendering.api.RenderSession;
+import com.android.ide.common.rendering.api.Result;
+import com.android.ide.common.rendering.api.SessionParams;
+import com.android.ide.common.rendering.api.ViewInfo;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the single live {@link RenderSession} of the editor.
+ * <p>
+ * Replaced sessions are disposed as soon as new session is requested. If only values of existing
+ * attributes are changed since the last full render, the existing session is updated using
+ * {@link RenderSession#setProperty(Object, String, String)} and re-rendered instead of inflating
+ * whole layout again. If layoutlib doesn't support this, or new value is reference to resource
+ * (which is not resolved by layoutlib in this case), the full render is performed.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class RenderSessionManager {
+  private static final String ANDROID_PREFIX = "android:";
+  private final LayoutLibrary m_layoutLib;
+  private RenderSession m_session;
+  private SessionState m_state;
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Constructor
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public RenderSessionManager(LayoutLibrary layoutLib) {
+    m_layoutLib = layoutLib;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the current {@link RenderSession}, may be <code>null</code>.
+   */
+  public RenderSession getSession() {
+    return m_session;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Sessions
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Disposes current session (if any) and creates new one using given {@link SessionParams}.
+   *
+   * @param snapshot
+   *          the {@link LayoutSnapshot} of tree rendered by this session.
+   * @param configurationKey
+   *          the key describing device, theme, etc. used for session.
+   * @param updatable
+   *          <code>true</code> if session inflates full layout, so that it can be updated later
+   *          using {@link #update(LayoutSnapshot, String)}.
+   * @return the created {@link RenderSession}.
+   */
+  public RenderSession createSession(SessionParams params,
+      LayoutSnapshot snapshot,
+      String configurationKey,
+      boolean updatable) {
+    dispose();
+    m_session = m_layoutLib.createSession(params);
+    AndroidMetrics.INSTANCE.sessionCreated();
+    if (updatable && m_session.getResult().isSuccess()) {
+      m_state = new SessionState(snapshot, configurationKey, m_session);
+    }
+    return m_session;
+  }
+
+  /**
+   * Makes given session current, for example session prepared in background before editor was
+   * opened. It is disposed when new session is created, and is not updatable.
+   */
+  public void adopt(RenderSession session) {
+    dispose();
+    m_session = session;
+  }
+
+  /**
+   * Tries to update current session in place: applies changed attribute values to existing View
+   * objects and re-renders the session.
+   *
+   * @return <code>true</code> if session updated successfully, or <code>false</code> if full
+   *         render required.
+   */
+  public boolean update(LayoutSnapshot snapshot, String configurationKey) {
+    if (m_session == null || m_state == null || !m_state.configurationKey.equals(configurationKey)) {
+      return false;
+    }
+    // collect changes
+    List<AttributeChange> changes = m_state.getChanges(snapshot);
+    if (changes == null || changes.isEmpty()) {
+      // structure changed or nothing changed in attributes, so possibly resources changed
+      return false;
+    }
+    // apply changes
+    for (AttributeChange change : changes) {
+      Result result = m_session.setProperty(change.view, change.name, change.value);
+      if (!result.isSuccess()) {
+        // not supported by this layoutlib or failed, session state is unknown now
+        dispose();
+        return false;
+      }
+    }
+    Result result = m_session.render();
+    if (!result.isSuccess()) {
+      dispose();
+      return false;
+    }
+    m_state.updateAttributes(changes);
+    return true;
+  }
+
+  /**
+   * Disposes current session.
+   */
+  public void dispose() {
+    if (m_session != null) {
+      m_session.dispose();
+      m_session = null;
+      AndroidMetrics.INSTANCE.sessionDisposed();
+    }
+    m_state = null;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // SessionState
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * The state of {@link DocumentElement}'s rendered by session.
+   */
+  private static final class SessionState {
+    private final String configurationKey;
+    private final List<DocumentElement> elements = Lists.newArrayList();
+    private final List<Map<String, String>> attributes = Lists.newArrayList();
+    private final Map<DocumentElement, Object> views = Maps.newHashMap();
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Constructor
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    private SessionState(LayoutSnapshot snapshot,
+        String configurationKey,
+        RenderSession session) {
+      this.configurationKey = configurationKey;
+      elements.addAll(snapshot.getElements());
+      for (int i = 0; i < elements.size(); i++) {
+        attributes.add(Maps.newHashMap(snapshot.getAttributes(i)));
+      }
+      for (ViewInfo viewInfo : session.getRootViews()) {
+        collectViews(viewInfo);
+      }
+    }
+
+    private void collectViews(ViewInfo viewInfo) {
+      Object cookie = viewInfo.getCookie();
+      if (cookie instanceof DocumentElement && viewInfo.getViewObject() != null) {
+        views.put((DocumentElement) cookie, viewInfo.getViewObject());
+      }
+      for (ViewInfo child : viewInfo.getChildren()) {
+        collectViews(child);
+      }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    //
+    // Changes
+    //
+    ////////////////////////////////////////////////////////////////////////////
+    /**
+     * @return the {@link List} of changed attributes which can be applied to existing session or
+     *         <code>null</code> if elements structure is changed or some change can not be applied.
+     */
+    private List<AttributeChange> getChanges(LayoutSnapshot snapshot) {
+      List<DocumentElement> newElements = snapshot.getElements();
+      if (newElements.size() != elements.size()) {
+        return null;
+      }
+      List<AttributeChange> changes = Lists.newArrayList();
+      for (int i = 0; i < elements.size(); i++) {
+        DocumentElement element = elements.get(i);
+        if (newElements.get(i) != element) {
+          return null;
+        }
+        Map<String, String> oldAttributes = attributes.get(i);
+        Map<String, String> newAttributes = snapshot.getAttributes(i);
+        if (!newAttributes.keySet().containsAll(oldAttributes.keySet())) {
+          // removed attribute can not be reset to default value
+          return null;
+        }
+        for (Map.Entry<String, String> entry : newAttributes.entrySet()) {
+          String name = entry.getKey();
+          String value = entry.getValue();
+          if (!StringUtils.equals(value, oldAttributes.get(name))) {
+            AttributeChange change = createChange(i, element, name, value);
+            if (change == null) {
+              return null;
+            }
+            changes.add(change);
+          }
+        }
+      }
+      return changes;
+    }
+
+    private AttributeChange createChange(int index,
+        DocumentElement element,
+        String name,
+        String value) {
+      Object view = views.get(element);
+      // only own View attributes, layout params and namespaces requires re-inflating
+      if (view == null || !name.startsWith(ANDROID_PREFIX)) {
+        return null;
+      }
+      String localName = name.substring(ANDROID_PREFIX.length());
+      if (localName.startsWith("layout_")) {
+        return null;
+      }
+      // setProperty() applies raw value, so "@string/...", "?attr/..." require full render
+      if (isResourceReference(value)) {
+        return null;
+      }
+      return new AttributeChange(index, name, localName, view, value);
+    }
+
+    private static boolean isResourceReference(String value) {
+      return value != null && (value.startsWith("@") || value.startsWith("?"));
+    }
+
+    /**
+     * Remembers applied changes as current state.
+     */
+    private void updateAttributes(List<AttributeChange> changes) {
+      for (AttributeChange change : changes) {
+        attributes.get(change.index).put(change.attribute, change.value);
+      }
+    }
+  }
+  /**
+   * Single attribute value change to apply.
+   */
+  private static final class AttributeChange {
+    private final int index;
+    private final String attribute;
+    private final String name;
+    private final Object view;
+    private final String value;
+
+    private AttributeChange(int index, String attribute, String name, Object view, String value) {
+      this.index = index;
+      this.attribute = attribute;
+      this.name = name;
+      this.view = view;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.resources;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.eclipse.wb.android.internal.support.AndroidUtils;
+import org.eclipse.wb.internal.core.utils.execution.ExecutionUtils;
+import org.eclipse.wb.internal.core.utils.execution.RunnableEx;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.android.ide.common.resources.platform.AttrsXmlParser;
+import com.android.ide.eclipse.adt.AdtPlugin;
+import com.android.ide.eclipse.adt.internal.sdk.Sdk;
+import com.android.ide.eclipse.adt.internal.sdk.Sdk.ITargetChangeListener;
+import com.android.sdklib.IAndroidTarget;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide cache of parsed "attrs.xml" files.
+ * <p>
+ * Parsing of framework "attrs.xml" takes significant time, so parsers are shared by all editors.
+ * Parser is keyed by path of file. Modification time of file is checked only after SDK or target
+ * reload notification from ADT, not on each request, and parser is re-created if file was changed.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class AttrsParserCache {
+  private static final int PRELOAD_ATTEMPTS = 12;
+  private static final long PRELOAD_DELAY = 5000;
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final AttrsParserCache INSTANCE = new AttrsParserCache();
+  private final Map<String, Entry> m_entries = Maps.newHashMap();
+  private ITargetChangeListener m_listener;
+
+  private AttrsParserCache() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the preloaded {@link AttrsXmlParser} for given "attrs.xml" file. If parser for this
+   *         file is being created in other thread, waits for it.
+   */
+  public AttrsXmlParser getParser(String path) {
+    installListener();
+    Entry entry;
+    synchronized (m_entries) {
+      entry = m_entries.get(path);
+      if (entry == null) {
+        entry = new Entry(path);
+        m_entries.put(path, entry);
+      }
+    }
+    return entry.getParser();
+  }
+
+  /**
+   * Schedules background parsing of "attrs.xml" for targets of open Android projects.
+   */
+  public void preload() {
+    installListener();
+    new PreloadJob().schedule();
+  }
+
+  /**
+   * Requests check for modification of files on next access to their parsers.
+   */
+  public void checkModified() {
+    synchronized (m_entries) {
+      for (Entry entry : m_entries.values()) {
+        entry.checkModified = true;
+      }
+    }
+  }
+
+  /**
+   * Removes all cached parsers.
+   */
+  public void clear() {
+    synchronized (m_entries) {
+      m_entries.clear();
+    }
+  }
+
+  /**
+   * Removes listener of SDK and target reloading, if installed.
+   */
+  public void uninstall() {
+    ITargetChangeListener listener;
+    synchronized (m_entries) {
+      listener = m_listener;
+      m_listener = null;
+    }
+    if (listener != null) {
+      AdtPlugin.getDefault().removeTargetListener(listener);
+    }
+  }
+
+  /**
+   * Installs listener which requests check for modification when SDK or target is reloaded.
+   */
+  private void installListener() {
+    ITargetChangeListener listener;
+    synchronized (m_entries) {
+      if (m_listener != null) {
+        return;
+      }
+      listener = new ITargetChangeListener() {
+        public void onSdkLoaded() {
+          checkModified();
+        }
+
+        public void onTargetLoaded(IAndroidTarget target) {
+          checkModified();
+        }
+
+        public void onProjectTargetChange(IProject changedProject) {
+        }
+      };
+      m_listener = listener;
+    }
+    AdtPlugin.getDefault().addTargetListener(listener);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Entry
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class Entry {
+    private final String path;
+    private volatile boolean checkModified;
+    private long lastModified;
+    private AttrsXmlParser parser;
+
+    private Entry(String path) {
+      this.path = path;
+    }
+
+    private synchronized AttrsXmlParser getParser() {
+      if (parser == null) {
+        lastModified = new File(path).lastModified();
+        parser = createParser();
+      } else if (checkModified) {
+        checkModified = false;
+        long modified = new File(path).lastModified();
+        if (modified != lastModified) {
+          lastModified = modified;
+          parser = createParser();
+        }
+      }
+      return parser;
+    }
+
+    private AttrsXmlParser createParser() {
+      AttrsXmlParser newParser = new AttrsXmlParser(path, AdtPlugin.getDefault());
+      newParser.preload();
+      return newParser;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // PreloadJob
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private final class PreloadJob extends Job {
+    private int m_attempts;
+
+    private PreloadJob() {
+      super("Loading Android attributes");
+      setSystem(true);
+      setPriority(LONG);
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+      Sdk sdk = Sdk.getCurrent();
+      if (sdk == null) {
+        // SDK is loaded by ADT in background, try later
+        if (++m_attempts < PRELOAD_ATTEMPTS) {
+          schedule(PRELOAD_DELAY);
+        }
+        return Status.OK_STATUS;
+      }
+      Set<String> paths = Sets.newHashSet();
+      for (IProject project : AndroidUtils.getOpenAndroidProjects()) {
+        IAndroidTarget target = sdk.getTarget(project);
+        if (target != null) {
+          paths.add(target.getPath(IAndroidTarget.ATTRIBUTES));
+        }
+      }
+      for (final String path : paths) {
+        if (monitor.isCanceled()) {
+          return Status.CANCEL_STATUS;
+        }
+        ExecutionUtils.runLog(new RunnableEx() {
+          public void run() throws Exception {
+            getParser(path);
+          }
+        });
+      }
+      return Status.OK_STATUS;
+    }
+  }
+}
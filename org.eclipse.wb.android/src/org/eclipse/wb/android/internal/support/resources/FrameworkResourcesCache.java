@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.resources;
+
+import com.android.ide.common.rendering.api.ResourceValue;
+import com.android.ide.common.resources.ResourceRepository;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.resources.ResourceType;
+import com.android.sdklib.IAndroidTarget;
+
+import org.apache.commons.collections.map.ReferenceMap;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Process-wide cache of configured framework resources.
+ * <p>
+ * Framework resources are immutable for {@link IAndroidTarget}, so configured resources are shared
+ * by all editors and projects which use same target. Values are softly referenced, so can be
+ * released when memory is low.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class FrameworkResourcesCache {
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final FrameworkResourcesCache INSTANCE = new FrameworkResourcesCache();
+  @SuppressWarnings("unchecked")
+  private final Map<Key, Entry> m_entries =
+      Collections.synchronizedMap(new ReferenceMap(ReferenceMap.HARD, ReferenceMap.SOFT));
+
+  private FrameworkResourcesCache() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the framework resources of given target configured for given
+   *         {@link FolderConfiguration}.
+   *
+   * @param repository
+   *          the framework {@link ResourceRepository} of target, used if resources are not cached
+   *          yet.
+   */
+  public Map<ResourceType, Map<String, ResourceValue>> getConfiguredResources(
+      IAndroidTarget target,
+      ResourceRepository repository,
+      FolderConfiguration config) {
+    Key key = new Key(target, config);
+    Entry entry = m_entries.get(key);
+    // target data may be re-loaded, so check also repository
+    if (entry == null || entry.repository != repository) {
+      entry = new Entry(repository, repository.getConfiguredResources(config));
+      m_entries.put(key, entry);
+    }
+    return entry.resources;
+  }
+
+  /**
+   * Removes all cached resources.
+   */
+  public void clear() {
+    m_entries.clear();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Inner classes
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class Entry {
+    private final ResourceRepository repository;
+    private final Map<ResourceType, Map<String, ResourceValue>> resources;
+
+    private Entry(ResourceRepository repository,
+        Map<ResourceType, Map<String, ResourceValue>> resources) {
+      this.repository = repository;
+      this.resources = resources;
+    }
+  }
+  private static final class Key {
+    private final String target;
+    private final FolderConfiguration config;
+
+    private Key(IAndroidTarget target, FolderConfiguration config) {
+      this.target = target.hashString();
+      // configuration is mutable, so copy
+      this.config = new FolderConfiguration();
+      this.config.set(config);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) obj;
+      return target.equals(key.target) && config.equals(key.config);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * target.hashCode() + config.hashCode();
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.resources;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.internal.core.DesignerPlugin;
+import org.eclipse.wb.internal.core.utils.reflect.ReflectionUtils;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+import com.android.ide.common.resources.platform.AttrsXmlParser;
+import com.android.ide.common.resources.platform.DeclareStyleableInfo;
+import com.android.ide.eclipse.adt.AdtPlugin;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of attributes declared in project, in all "res/values*" XML files.
+ * <p>
+ * Index is checked for changes only when "values" resources of project are changed (see
+ * {@link ProjectChangesTracker}), and then only added and modified XML files are parsed. Results
+ * are kept for each file. Declare-styleable may use attribute declared in any other file, so
+ * attributes of all files are merged from kept results, and declare-styleables are resolved again
+ * only if attributes changed, only in files which have them.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class ProjectAttributesIndex {
+  private static final String RES_FOLDER = "res";
+  private static final String VALUES_FOLDER = "values";
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final ProjectAttributesIndex INSTANCE = new ProjectAttributesIndex();
+  private final Map<IProject, ProjectEntry> m_projects = Maps.newHashMap();
+
+  private ProjectAttributesIndex() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the {@link DeclareStyleableInfo} with given name declared in project, or
+   *         <code>null</code>.
+   */
+  public DeclareStyleableInfo getStyleable(IProject project, String name) {
+    return getProjectEntry(project).styleables.get(name);
+  }
+
+  /**
+   * @return the enum/flag values of attribute with given name declared in project, or
+   *         <code>null</code>.
+   */
+  public Map<String, Integer> getEnumFlagValues(IProject project, String attrLocalName) {
+    return getProjectEntry(project).enumFlagValues.get(attrLocalName);
+  }
+
+  /**
+   * Removes all indexed information.
+   */
+  public synchronized void clear() {
+    m_projects.clear();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Implementation
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private synchronized ProjectEntry getProjectEntry(IProject project) {
+    long generation = ProjectChangesTracker.INSTANCE.getValuesGeneration(project);
+    ProjectEntry entry = m_projects.get(project);
+    if (entry == null) {
+      entry = new ProjectEntry();
+      m_projects.put(project, entry);
+    } else if (entry.generation == generation) {
+      return entry;
+    }
+    entry.generation = generation;
+    entry.update(getValuesFiles(project));
+    return entry;
+  }
+
+  /**
+   * @return the XML files in "res/values*" folders, files from default "values" folder first.
+   */
+  private static List<IFile> getValuesFiles(IProject project) {
+    List<IFile> files = Lists.newArrayList();
+    IFolder resFolder = project.getFolder(RES_FOLDER);
+    if (!resFolder.isAccessible()) {
+      return files;
+    }
+    try {
+      for (IResource folder : resFolder.members()) {
+        if (folder instanceof IFolder && folder.getName().startsWith(VALUES_FOLDER)) {
+          for (IResource file : ((IFolder) folder).members()) {
+            if (file instanceof IFile && "xml".equalsIgnoreCase(file.getFileExtension())) {
+              files.add((IFile) file);
+            }
+          }
+        }
+      }
+    } catch (CoreException e) {
+      DesignerPlugin.log(e);
+    }
+    Collections.sort(files, new Comparator<IFile>() {
+      public int compare(IFile o1, IFile o2) {
+        boolean default1 = VALUES_FOLDER.equals(o1.getParent().getName());
+        boolean default2 = VALUES_FOLDER.equals(o2.getParent().getName());
+        if (default1 != default2) {
+          return default1 ? -1 : 1;
+        }
+        return o1.getFullPath().toString().compareTo(o2.getFullPath().toString());
+      }
+    });
+    return files;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Inner classes
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class ProjectEntry {
+    private long generation;
+    private Map<IFile, FileEntry> files = Collections.emptyMap();
+    private Map<String, DeclareStyleableInfo> styleables = Collections.emptyMap();
+    private Map<String, Map<String, Integer>> enumFlagValues = Collections.emptyMap();
+
+    /**
+     * Parses new and changed files, then re-builds merged attributes from cached results of files.
+     */
+    private void update(List<IFile> valuesFiles) {
+      Map<IFile, FileEntry> newFiles = Maps.newHashMap();
+      boolean changed = valuesFiles.size() != files.size();
+      boolean attributesChanged = false;
+      for (IFile file : valuesFiles) {
+        FileEntry fileEntry = files.get(file);
+        if (fileEntry == null || fileEntry.stamp != file.getModificationStamp()) {
+          FileEntry newFileEntry = new FileEntry(file);
+          attributesChanged |= newFileEntry.hasAttributes();
+          attributesChanged |= fileEntry != null && fileEntry.hasAttributes();
+          fileEntry = newFileEntry;
+          changed = true;
+        }
+        newFiles.put(file, fileEntry);
+      }
+      for (Map.Entry<IFile, FileEntry> entry : files.entrySet()) {
+        if (!newFiles.containsKey(entry.getKey())) {
+          attributesChanged |= entry.getValue().hasAttributes();
+        }
+      }
+      if (!changed) {
+        return;
+      }
+      // declare-styleable may use attribute of any file, so resolve them again if needed
+      AttrsXmlParser attributesParser = createAttributesParser(valuesFiles, newFiles);
+      Map<String, DeclareStyleableInfo> newStyleables = Maps.newHashMap();
+      Map<String, Map<String, Integer>> newEnumFlagValues = Maps.newHashMap();
+      for (IFile file : valuesFiles) {
+        FileEntry fileEntry = newFiles.get(file);
+        if (attributesChanged || !fileEntry.resolved) {
+          fileEntry.resolve(file, attributesParser);
+        }
+        // merge, first declaration wins
+        putAbsent(newStyleables, fileEntry.styleables);
+        putAbsent(newEnumFlagValues, fileEntry.enumFlagValues);
+      }
+      files = newFiles;
+      styleables = newStyleables;
+      enumFlagValues = newEnumFlagValues;
+    }
+
+    /**
+     * @return the not parsed {@link AttrsXmlParser} with attributes of all given files, to be
+     *         inherited by parsers which resolve declare-styleables.
+     */
+    private static AttrsXmlParser createAttributesParser(List<IFile> valuesFiles,
+        Map<IFile, FileEntry> fileEntries) {
+      AttrsXmlParser parser = new AttrsXmlParser(RES_FOLDER, null, AdtPlugin.getDefault());
+      Map<String, Object> attributes = getAttributeMap(parser);
+      Map<String, Map<String, Integer>> enumFlagValues = parser.getEnumFlagValues();
+      // same as chain of parsers, last declaration wins
+      for (IFile file : valuesFiles) {
+        FileEntry fileEntry = fileEntries.get(file);
+        attributes.putAll(fileEntry.attributes);
+        enumFlagValues.putAll(fileEntry.ownEnumFlagValues);
+      }
+      return parser;
+    }
+
+    private static <V> void putAbsent(Map<String, V> target, Map<String, V> source) {
+      for (Map.Entry<String, V> entry : source.entrySet()) {
+        if (!target.containsKey(entry.getKey())) {
+          target.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+  }
+
+  /**
+   * Results of parsing of single "values" file: own attributes, and declare-styleables resolved
+   * using attributes of all files.
+   */
+  private static final class FileEntry {
+    private final long stamp;
+    private final Map<String, Object> attributes;
+    private final Map<String, Map<String, Integer>> ownEnumFlagValues;
+    private final boolean hasStyleables;
+    private Map<String, DeclareStyleableInfo> styleables;
+    private Map<String, Map<String, Integer>> enumFlagValues;
+    private boolean resolved;
+
+    /**
+     * Parses given file alone.
+     */
+    private FileEntry(IFile file) {
+      stamp = file.getModificationStamp();
+      AttrsXmlParser parser = createParser(file, null);
+      attributes = Maps.newHashMap(getAttributeMap(parser));
+      ownEnumFlagValues = Maps.newHashMap(parser.getEnumFlagValues());
+      hasStyleables = !parser.getDeclareStyleableList().isEmpty();
+      styleables = parser.getDeclareStyleableList();
+      enumFlagValues = ownEnumFlagValues;
+    }
+
+    private boolean hasAttributes() {
+      return !attributes.isEmpty() || !ownEnumFlagValues.isEmpty();
+    }
+
+    /**
+     * Resolves declare-styleables of given file using attributes of given parser. File without
+     * declare-styleables is not parsed again.
+     */
+    private void resolve(IFile file, AttrsXmlParser attributesParser) {
+      if (hasStyleables) {
+        AttrsXmlParser parser = createParser(file, attributesParser);
+        styleables = parser.getDeclareStyleableList();
+        enumFlagValues = parser.getEnumFlagValues();
+      }
+      resolved = true;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Parser
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static AttrsXmlParser createParser(IFile file, AttrsXmlParser inheritableAttributes) {
+    AttrsXmlParser parser =
+        new AttrsXmlParser(file.getLocation().toOSString(),
+            inheritableAttributes,
+            AdtPlugin.getDefault());
+    parser.preload();
+    return parser;
+  }
+
+  /**
+   * @return the map of attribute descriptions of given {@link AttrsXmlParser}, it is inherited by
+   *         parsers created with this one, but has no accessor.
+   */
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> getAttributeMap(AttrsXmlParser parser) {
+    return (Map<String, Object>) ReflectionUtils.getFieldObject(parser, "mAttributeMap");
+  }
+}
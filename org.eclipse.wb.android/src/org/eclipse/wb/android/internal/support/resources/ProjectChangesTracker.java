@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.resources;
+
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.internal.core.DesignerPlugin;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import java.util.Map;
+
+/**
+ * Tracks changes in Android projects and maintains "generation" counters, so that caches can
+ * check if project resources or code are changed since some moment.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class ProjectChangesTracker implements IResourceChangeListener {
+  private static final String RES_FOLDER = "res";
+  private static final String VALUES_FOLDER_PREFIX = "values";
+  private static final String CLASS_EXTENSION = "class";
+  private static final String JAR_EXTENSION = "jar";
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final ProjectChangesTracker INSTANCE = new ProjectChangesTracker();
+  private final Map<IProject, Generations> m_generations = Maps.newHashMap();
+
+  private ProjectChangesTracker() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Life cycle
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * Starts tracking of workspace changes.
+   */
+  public void install() {
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(
+        this,
+        IResourceChangeEvent.POST_CHANGE);
+  }
+
+  /**
+   * Stops tracking of workspace changes.
+   */
+  public void uninstall() {
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+    synchronized (m_generations) {
+      m_generations.clear();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the counter incremented on each change in "res" folder of given project.
+   */
+  public long getResourcesGeneration(IProject project) {
+    return getGenerations(project).resources;
+  }
+
+  /**
+   * @return the counter incremented on each change in "res/values*" folders of given project.
+   */
+  public long getValuesGeneration(IProject project) {
+    return getGenerations(project).values;
+  }
+
+  /**
+   * @return the counter incremented on each change of code (source, classes, libraries) in given
+   *         project.
+   */
+  public long getCodeGeneration(IProject project) {
+    return getGenerations(project).code;
+  }
+
+  /**
+   * @return the counter incremented on each change of compiled classes or libraries in given
+   *         project, including generated "R" class.
+   */
+  public long getClassesGeneration(IProject project) {
+    return getGenerations(project).classes;
+  }
+
+  private Generations getGenerations(IProject project) {
+    synchronized (m_generations) {
+      Generations generations = m_generations.get(project);
+      if (generations == null) {
+        generations = new Generations();
+        m_generations.put(project, generations);
+      }
+      return generations;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // IResourceChangeListener
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public void resourceChanged(IResourceChangeEvent event) {
+    IResourceDelta delta = event.getDelta();
+    if (delta == null) {
+      return;
+    }
+    try {
+      delta.accept(new IResourceDeltaVisitor() {
+        public boolean visit(IResourceDelta delta) throws CoreException {
+          IResource resource = delta.getResource();
+          if (resource.getType() == IResource.PROJECT) {
+            if (delta.getKind() == IResourceDelta.REMOVED) {
+              synchronized (m_generations) {
+                m_generations.remove(resource);
+              }
+              return false;
+            }
+            return true;
+          }
+          if (resource.getType() == IResource.FILE) {
+            fileChanged(resource);
+          }
+          return true;
+        }
+      });
+    } catch (Throwable e) {
+      DesignerPlugin.log(e);
+    }
+  }
+
+  private void fileChanged(IResource file) {
+    Generations generations = getGenerations(file.getProject());
+    IPath path = file.getProjectRelativePath();
+    synchronized (m_generations) {
+      if (RES_FOLDER.equals(path.segment(0))) {
+        generations.resources++;
+        if (path.segmentCount() > 2 && path.segment(1).startsWith(VALUES_FOLDER_PREFIX)) {
+          generations.values++;
+        }
+      } else {
+        generations.code++;
+        String extension = file.getFileExtension();
+        if (CLASS_EXTENSION.equals(extension) || JAR_EXTENSION.equals(extension)) {
+          generations.classes++;
+        }
+      }
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Generations
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class Generations {
+    private volatile long resources;
+    private volatile long values;
+    private volatile long code;
+    private volatile long classes;
+  }
+}
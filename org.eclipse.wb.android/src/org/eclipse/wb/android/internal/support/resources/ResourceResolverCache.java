@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.resources;
+
+import org.eclipse.wb.android.internal.AndroidMetrics;
+
+import org.eclipse.core.resources.IProject;
+
+import com.android.ide.common.rendering.api.ResourceValue;
+import com.android.ide.common.resources.ResourceRepository;
+import com.android.ide.common.resources.ResourceResolver;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.ide.eclipse.adt.internal.resources.manager.ProjectResources;
+import com.android.resources.ResourceType;
+import com.android.sdklib.IAndroidTarget;
+
+import org.apache.commons.lang.ObjectUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of configured {@link ResourceResolver}'s.
+ * <p>
+ * Creating of {@link ResourceResolver} requires configuring of all project and framework resources,
+ * so resolvers are cached by project, target, {@link FolderConfiguration} and theme. Resolver is
+ * re-created when resources of project are changed.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+@SuppressWarnings("restriction")
+public final class ResourceResolverCache {
+  private static final int MAX_ENTRIES = 8;
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final ResourceResolverCache INSTANCE = new ResourceResolverCache();
+  private final LinkedHashMap<Key, Entry> m_entries =
+      new LinkedHashMap<Key, Entry>(MAX_ENTRIES, 0.75f, true);
+
+  private ResourceResolverCache() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the {@link ResourceResolver} for given project and configuration, cached or created
+   *         using given resources.
+   */
+  public ResourceResolver getResolver(IProject project,
+      IAndroidTarget target,
+      ProjectResources projectResources,
+      ResourceRepository frameworkResources,
+      FolderConfiguration config,
+      String themeName) {
+    Key key = new Key(project, target, config, themeName);
+    long generation = ProjectChangesTracker.INSTANCE.getResourcesGeneration(project);
+    synchronized (m_entries) {
+      Entry entry = m_entries.get(key);
+      if (entry != null && entry.generation == generation) {
+        return entry.resolver;
+      }
+    }
+    // create new resolver
+    Map<ResourceType, Map<String, ResourceValue>> projectMap =
+        projectResources.getConfiguredResources(config);
+    Map<ResourceType, Map<String, ResourceValue>> frameworkMap =
+        FrameworkResourcesCache.INSTANCE.getConfiguredResources(
+            target,
+            frameworkResources,
+            config);
+    ResourceResolver resolver =
+        ResourceResolver.create(projectMap, frameworkMap, themeName, false);
+    AndroidMetrics.INSTANCE.resolverBuilt();
+    synchronized (m_entries) {
+      m_entries.put(key, new Entry(resolver, generation));
+      if (m_entries.size() > MAX_ENTRIES) {
+        Iterator<Key> I = m_entries.keySet().iterator();
+        I.next();
+        I.remove();
+      }
+    }
+    return resolver;
+  }
+
+  /**
+   * Removes all resolvers of given project, for example when its target is changed.
+   */
+  public void clear(IProject project) {
+    synchronized (m_entries) {
+      for (Iterator<Key> I = m_entries.keySet().iterator(); I.hasNext();) {
+        if (I.next().project.equals(project)) {
+          I.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all cached resolvers.
+   */
+  public void clear() {
+    synchronized (m_entries) {
+      m_entries.clear();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Inner classes
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class Entry {
+    private final ResourceResolver resolver;
+    private final long generation;
+
+    private Entry(ResourceResolver resolver, long generation) {
+      this.resolver = resolver;
+      this.generation = generation;
+    }
+  }
+  private static final class Key {
+    private final IProject project;
+    private final String target;
+    private final FolderConfiguration config;
+    private final String themeName;
+
+    private Key(IProject project,
+        IAndroidTarget target,
+        FolderConfiguration config,
+        String themeName) {
+      this.project = project;
+      this.target = target.hashString();
+      // configuration is mutable, so copy
+      this.config = new FolderConfiguration();
+      this.config.set(config);
+      this.themeName = themeName;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) obj;
+      return project.equals(key.project)
+          && target.equals(key.target)
+          && config.equals(key.config)
+          && ObjectUtils.equals(themeName, key.themeName);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = project.hashCode();
+      result = 31 * result + target.hashCode();
+      result = 31 * result + config.hashCode();
+      result = 31 * result + ObjectUtils.hashCode(themeName);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2011 Alexander Mitin (Alexander.Mitin@gmail.com)
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    Alexander Mitin (Alexander.Mitin@gmail.com) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.wb.android.internal.support.resources;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.eclipse.wb.internal.core.utils.execution.RunnableObjectEx;
+
+import org.eclipse.core.resources.IProject;
+
+import com.android.ide.common.rendering.api.ResourceValue;
+import com.android.ide.common.rendering.api.StyleResourceValue;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.sdklib.IAndroidTarget;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of themes available for project.
+ * <p>
+ * Framework themes are collected once per target and configuration. Project themes are found using
+ * graph of style parents with memoized "is theme" flags, and re-collected only when "values"
+ * resources of project or configuration are changed. Sorted list of all themes is cached.
+ *
+ * @author mitin_aa
+ * @coverage android.support
+ */
+public final class ThemeIndex {
+  private static final String ANDROID_NS_NAME_PREFIX = "android:";
+  private static final String STYLE_PREFIX = "style/";
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Instance
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  public static final ThemeIndex INSTANCE = new ThemeIndex();
+  private final Map<String, List<String>> m_frameworkThemes = Maps.newHashMap();
+  private final Map<IProject, ProjectThemes> m_projectThemes = Maps.newHashMap();
+
+  private ThemeIndex() {
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Access
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the sorted names of all themes available for given project.
+   *
+   * @param projectStyles
+   *          provides project styles, invoked only if project themes should be re-collected.
+   * @param frameworkStyles
+   *          provides framework styles, invoked only if themes of target are not collected yet.
+   */
+  public synchronized List<String> getThemes(IProject project,
+      IAndroidTarget target,
+      FolderConfiguration config,
+      RunnableObjectEx<Map<String, ResourceValue>> projectStyles,
+      RunnableObjectEx<Map<String, ResourceValue>> frameworkStyles) throws Exception {
+    String configKey = config.toString();
+    List<String> frameworkThemes = getFrameworkThemes(target, configKey, frameworkStyles);
+    long generation = ProjectChangesTracker.INSTANCE.getValuesGeneration(project);
+    ProjectThemes projectThemes = m_projectThemes.get(project);
+    if (projectThemes == null
+        || projectThemes.generation != generation
+        || projectThemes.frameworkThemes != frameworkThemes) {
+      List<String> themes = collectProjectThemes(projectStyles.runObject());
+      themes.addAll(frameworkThemes);
+      Collections.sort(themes);
+      projectThemes =
+          new ProjectThemes(generation, frameworkThemes, Collections.unmodifiableList(themes));
+      m_projectThemes.put(project, projectThemes);
+    }
+    return projectThemes.themes;
+  }
+
+  /**
+   * Removes all collected themes.
+   */
+  public synchronized void clear() {
+    m_frameworkThemes.clear();
+    m_projectThemes.clear();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Framework
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private List<String> getFrameworkThemes(IAndroidTarget target,
+      String configKey,
+      RunnableObjectEx<Map<String, ResourceValue>> frameworkStyles) throws Exception {
+    String key = target.hashString() + "/" + configKey;
+    List<String> themes = m_frameworkThemes.get(key);
+    if (themes == null) {
+      themes = Lists.newArrayList();
+      Map<String, ResourceValue> styles = frameworkStyles.runObject();
+      if (styles != null) {
+        for (ResourceValue value : styles.values()) {
+          String name = value.getName();
+          if (isThemeName(name)) {
+            themes.add(name);
+          }
+        }
+      }
+      Collections.sort(themes);
+      themes = Collections.unmodifiableList(themes);
+      m_frameworkThemes.put(key, themes);
+    }
+    return themes;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // Project
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  /**
+   * @return the names of project styles which extend, directly or indirectly, some theme.
+   */
+  private static List<String> collectProjectThemes(Map<String, ResourceValue> styles) {
+    List<String> themes = Lists.newArrayList();
+    if (styles == null) {
+      return themes;
+    }
+    Map<String, Boolean> themeFlags = Maps.newHashMap();
+    for (ResourceValue value : styles.values()) {
+      if (isTheme(value, styles, themeFlags)) {
+        themes.add(value.getName());
+      }
+    }
+    return themes;
+  }
+
+  /**
+   * Returns whether the given style is a theme, i.e. its parent is a theme. Results are
+   * remembered in given map, so each style is checked only once.
+   *
+   * See {@link
+   * com.android.ide.eclipse.adt.internal.editors.layout.configuration.ConfigurationComposite#
+   * isTheme(ResourceValue, Map<String, ResourceValue>)}
+   */
+  private static boolean isTheme(ResourceValue value,
+      Map<String, ResourceValue> styles,
+      Map<String, Boolean> themeFlags) {
+    String name = value.getName();
+    Boolean flag = themeFlags.get(name);
+    if (flag != null) {
+      return flag.booleanValue();
+    }
+    // mark as not theme while visiting parents, to break cycles
+    themeFlags.put(name, Boolean.FALSE);
+    boolean theme = isThemeName(name);
+    String parentName = getProjectParent(value);
+    if (parentName != null) {
+      ResourceValue parentValue = styles.get(parentName);
+      if (parentValue != null) {
+        theme = isTheme(parentValue, styles, themeFlags);
+      }
+    }
+    themeFlags.put(name, Boolean.valueOf(theme));
+    return theme;
+  }
+
+  /**
+   * @return the name of parent style declared in project, or <code>null</code> if no parent or
+   *         parent is framework style.
+   */
+  private static String getProjectParent(ResourceValue value) {
+    if (!(value instanceof StyleResourceValue)) {
+      return null;
+    }
+    String name = value.getName();
+    String parentStyle = ((StyleResourceValue) value).getParentStyle();
+    if (parentStyle == null) {
+      // if there is no specified parent style we look an implied one.
+      // For instance 'Theme.light' is implied child style of 'Theme',
+      // and 'Theme.light.fullscreen' is implied child style of 'Theme.light'
+      int index = name.lastIndexOf('.');
+      return index != -1 ? name.substring(0, index) : null;
+    }
+    // remove the useless @ if it's there
+    parentStyle = StringUtils.removeStart(parentStyle, "@");
+    if (parentStyle.startsWith(ANDROID_NS_NAME_PREFIX)) {
+      // framework style
+      return null;
+    }
+    // at this point we could have the format style/<name>. we want only the name
+    return StringUtils.removeStart(parentStyle, STYLE_PREFIX);
+  }
+
+  private static boolean isThemeName(String name) {
+    return name.startsWith("Theme.") || name.equals("Theme");
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+  //
+  // ProjectThemes
+  //
+  ////////////////////////////////////////////////////////////////////////////
+  private static final class ProjectThemes {
+    private final long generation;
+    private final List<String> frameworkThemes;
+    private final List<String> themes;
+
+    private ProjectThemes(long generation, List<String> frameworkThemes, List<String> themes) {
+      this.generation = generation;
+      this.frameworkThemes = frameworkThemes;
+      this.themes = themes;
+    }
+  }
+}